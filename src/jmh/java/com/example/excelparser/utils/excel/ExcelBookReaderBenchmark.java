@@ -0,0 +1,135 @@
+package com.example.excelparser.utils.excel;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Бенчмарки горячих участков ExcelBookReader (java -jar target/benchmarks.jar ExcelBookReaderBenchmark -prof gc)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ExcelBookReaderBenchmark {
+    private static final int HEADER_ROW = 0;
+    private static final int FIRST_DATA_ROW = 1;
+    private static final int ROWS_PER_BATCH = 1000;
+
+    @Param({"10000"})
+    public int rows;
+    @Param({"10", "40"})
+    public int columns;
+    @Param({"NUMERIC+DATE+TEXT+BOOLEAN+FORMULA", "NUMERIC", "TEXT"})
+    public String typeMix;
+    @Param({"0.0", "0.3"})
+    public double sparsity;
+    @Param({"ALWAYS_EVALUATE", "CACHED_VALUE"})
+    public ExcelBookReader.FormulaStrategy formulaStrategy;
+
+    private Path file;
+    private ExcelBookReader bookReader;
+    private Sheet sheet;
+    private ColumnPlan plan;
+    private int lastDataRow;
+
+    // Счетчик обработанных строк (выводится как строк в секунду)
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = SyntheticWorkbookGenerator.builder()
+                .rows(rows)
+                .columns(columns)
+                .columnKinds(SyntheticWorkbookGenerator.ColumnKind.parseMix(typeMix))
+                .sparsity(sparsity)
+                .build()
+                .generate();
+        bookReader = new ExcelBookReader(file, formulaStrategy);
+        sheet = bookReader.getWorkbook().getSheet(SyntheticWorkbookGenerator.SHEET_NAME);
+
+        Map<String, String> postgresTypes = bookReader.getPostgresTypesByHeaderIndex(
+                sheet, FIRST_DATA_ROW, HEADER_ROW, Optional.empty(), Optional.empty());
+        plan = ColumnPlan.compile(postgresTypes, Optional.empty());
+        lastDataRow = sheet.getLastRowNum();
+    }
+
+    // Каждый вызов бенчмарка при ALWAYS_EVALUATE должен вычислять формулы, а не читать результаты,
+    // сохраненные предыдущим вызовом
+    @Setup(Level.Invocation)
+    public void resetFormulaEvaluation() {
+        if (ExcelBookReader.FormulaStrategy.ALWAYS_EVALUATE == formulaStrategy)
+            bookReader.resetFormulaEvaluation();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        bookReader.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void toPostgresTableValues(RowCounter counter, Blackhole blackhole) {
+        for (int rowFrom = FIRST_DATA_ROW; rowFrom <= lastDataRow; rowFrom += ROWS_PER_BATCH) {
+            int rowTo = Math.min(rowFrom + ROWS_PER_BATCH - 1, lastDataRow);
+            blackhole.consume(bookReader.toPostgresTableValues(sheet, plan, rowFrom, rowTo));
+            counter.rows += rowTo - rowFrom + 1;
+        }
+    }
+
+    @Benchmark
+    public void toPostgresRowValues(RowCounter counter, Blackhole blackhole) {
+        for (int i = FIRST_DATA_ROW; i <= lastDataRow; i++) {
+            Row row = sheet.getRow(i);
+            blackhole.consume(bookReader.toPostgresRowValues(row, plan));
+            counter.rows++;
+        }
+    }
+
+    @Benchmark
+    public void toPostgresRowObjects(RowCounter counter, Blackhole blackhole) {
+        for (int i = FIRST_DATA_ROW; i <= lastDataRow; i++) {
+            Row row = sheet.getRow(i);
+            blackhole.consume(bookReader.toPostgresRowObjects(row, plan));
+            counter.rows++;
+        }
+    }
+
+    // Определение типа каждой ячейки строки данных
+    @Benchmark
+    public void toPostgresType(RowCounter counter, Blackhole blackhole) {
+        for (int i = FIRST_DATA_ROW; i <= lastDataRow; i++) {
+            Row row = sheet.getRow(i);
+            for (int c = 0; c < columns; c++) {
+                Cell cell = row.getCell(c);
+                if (cell != null)
+                    blackhole.consume(bookReader.toPostgresType(cell));
+            }
+            counter.rows++;
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> getPostgresTypesByHeaderIndex() {
+        return bookReader.getPostgresTypesByHeaderIndex(
+                sheet, FIRST_DATA_ROW, HEADER_ROW, Optional.empty(), Optional.empty());
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.excelparser.utils.excel;
+
+import lombok.Builder;
+import lombok.NonNull;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+// Генератор книг с заданным числом строк и колонок, набором типов данных и долей пустых ячеек
+@Builder
+public class SyntheticWorkbookGenerator {
+    public static final String SHEET_NAME = "data";
+
+    @Builder.Default
+    private int rows = 10_000;
+    @Builder.Default
+    private int columns = 20;
+    // типы колонок назначаются по кругу: колонка i получает тип columnKinds[i % size]
+    @NonNull
+    @Builder.Default
+    private List<ColumnKind> columnKinds = List.of(ColumnKind.values());
+    // доля пустых ячеек в строках данных (кроме первой)
+    @Builder.Default
+    private double sparsity = 0.0;
+    @Builder.Default
+    private long seed = 42;
+
+    public enum ColumnKind {
+        NUMERIC,
+        DATE,
+        TEXT,
+        BOOLEAN,
+        FORMULA;
+
+        // Разбор набора типов вида "NUMERIC+TEXT+DATE"
+        public static List<ColumnKind> parseMix(String mix) {
+            return Arrays.stream(mix.split("\\+"))
+                    .map(String::strip)
+                    .map(String::toUpperCase)
+                    .map(ColumnKind::valueOf)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public Path generate() throws IOException {
+        Path file = Files.createTempFile("excel-parser-bench-", ".xlsx");
+        var random = new Random(seed);
+
+        try (var workbook = new SXSSFWorkbook(1000);
+             OutputStream output = Files.newOutputStream(file)) {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("dd.mm.yyyy"));
+
+            Sheet sheet = workbook.createSheet(SHEET_NAME);
+            Row header = sheet.createRow(0);
+            for (int c = 0; c < columns; c++)
+                header.createCell(c).setCellValue("Колонка %d %s".formatted(c, kindOf(c)));
+
+            for (int r = 1; r <= rows; r++) {
+                Row row = sheet.createRow(r);
+                for (int c = 0; c < columns; c++) {
+                    if (r > 1 && random.nextDouble() < sparsity)
+                        continue;
+                    fillCell(row.createCell(c), kindOf(c), r, random, dateStyle);
+                }
+            }
+
+            workbook.write(output);
+            workbook.dispose();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    private ColumnKind kindOf(int column) {
+        return columnKinds.get(column % columnKinds.size());
+    }
+
+    private static void fillCell(Cell cell, ColumnKind kind, int rowIndex, Random random, CellStyle dateStyle) {
+        switch (kind) {
+            case NUMERIC -> cell.setCellValue(random.nextDouble() * 1_000_000);
+            case DATE -> {
+                cell.setCellValue(LocalDateTime.of(2020, 1, 1, 0, 0).plusDays(random.nextInt(2000)));
+                cell.setCellStyle(dateStyle);
+            }
+            case TEXT -> cell.setCellValue("Станция %d-%d".formatted(random.nextInt(5000), rowIndex));
+            case BOOLEAN -> cell.setCellValue(random.nextBoolean());
+            case FORMULA -> {
+                cell.setCellFormula("ROW()*2");
+                // сохраненный результат формулы (SXSSF формулы не вычисляет)
+                cell.setCellValue((rowIndex + 1) * 2.0);
+            }
+        }
+    }
+}
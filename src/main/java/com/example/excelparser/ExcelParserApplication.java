@@ -2,20 +2,24 @@ package com.example.excelparser;
 
 import com.example.excelparser.utils.excel.DatabaseWriter;
 import com.example.excelparser.utils.excel.QueryPropertyHolder;
-import com.example.excelparser.utils.excel.ExcelBookReader;
 import com.example.excelparser.utils.excel.ExcelProcessorPropertyParser;
+import com.example.excelparser.utils.excel.MemoryGovernor;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Cleanup;
 import org.apache.poi.ss.usermodel.Sheet;
+import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -29,6 +33,11 @@ public class ExcelParserApplication {
 
     public static void main(String[] args) throws SQLException {
 
+        // контекст Spring публикует метрики записи (реестр метрик Actuator, доступ через JMX) на время загрузки
+        @Cleanup
+        ConfigurableApplicationContext context = SpringApplication.run(ExcelParserApplication.class, args);
+        MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+
         @Cleanup
         Connection connection = createConnection();
 
@@ -37,9 +46,10 @@ public class ExcelParserApplication {
 
 //        try (FileInputStream inputStream = new FileInputStream(new File("/home/dmitry/Загрузки/analize_data_2.xlsx"))) {
 //        try (FileInputStream inputStream = new FileInputStream(new File("/home/dmitry/Загрузки/formy_otcheta_s_uchastka_2.xlsx"))) {
-        try (FileInputStream inputStream = new FileInputStream(new File("/home/dmitry/Загрузки/tambov.xlsx"))) {
-
-            ExcelBookReader bookReader = new ExcelBookReader(inputStream);
+        // режим чтения выбирается по оценке книги; одновременные загрузки делят общий бюджет памяти
+        MemoryGovernor memoryGovernor = MemoryGovernor.ofHeapShare(0.6, Duration.ofMinutes(10), meterRegistry);
+        try (MemoryGovernor.Lease book = memoryGovernor.open(Path.of("/home/dmitry/Загрузки/tambov.xlsx"))) {
+            System.out.println("Режим чтения книги: " + book.getMode());
 
             var propertyParser = ExcelProcessorPropertyParser.builder()
 //                    .sheetNames(SHEET_NAMES_STRING.isBlank() ? bookReader.getFirstSheetName().orElse("") : SHEET_NAMES_STRING)
@@ -55,13 +65,16 @@ public class ExcelParserApplication {
             System.out.println("propertyParser:\n" + propertyParser);
 
             List<QueryPropertyHolder> queryPropertyHolders = propertyParser.buildQueryPropertyHolders(PARSE_MODE);
+            // таблицы листов можно найти по индексу непустых ячеек вместо явного задания строк и колонок
+//            List<QueryPropertyHolder> queryPropertyHolders = propertyParser.detectQueryPropertyHolders(book);
             System.out.println("queryPropertyHolders:\n" + queryPropertyHolders);
 
             DatabaseWriter databaseWriter = DatabaseWriter.builder()
                     .connection(connection)
-                    .bookReader(bookReader)
+                    .book(book)
 //                    .schemeName("")
                     .overwrite(true)
+                    .meterRegistry(meterRegistry)
 //                    .logger(getLogger())
                     .build();
 
@@ -76,9 +89,12 @@ public class ExcelParserApplication {
 
     private static Connection createConnection() throws SQLException {
         var url = "jdbc:postgresql://localhost:5432/nifi_test_db";
-        var username = "postgres";
-        var password = "changeme";
-        return DriverManager.getConnection(url, username, password);
+        var properties = new Properties();
+        properties.setProperty("user", "postgres");
+        properties.setProperty("password", "changeme");
+        // объединение пакетов подготовленного INSERT в многострочные запросы (InsertMode.PREPARED)
+        properties.setProperty("reWriteBatchedInserts", "true");
+        return DriverManager.getConnection(url, properties);
     }
 
 }
@@ -0,0 +1,109 @@
+package com.example.excelparser.utils.database;
+
+import lombok.NonNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+// Запись строк подготовленным INSERT пакетами (для многострочного INSERT нужен reWriteBatchedInserts=true)
+public class PostgresBatchInserter implements PostgresRowWriter {
+    private final PreparedStatement statement;
+    private final PostgresType[] columnTypes;
+    private final int batchSize;
+    private int pendingRows;
+    private long rowCount;
+
+    PostgresBatchInserter(@NonNull Connection connection,
+                          @NonNull String schemeName,
+                          @NonNull String tableName,
+                          @NonNull String fieldNames,
+                          @NonNull List<String> fieldTypes,
+                          int batchSize) throws SQLException {
+        this.columnTypes = PostgresType.of(fieldTypes);
+        this.batchSize = Math.max(1, batchSize);
+
+        final String query = "INSERT INTO %s.%s (%s) VALUES (%s)".formatted(
+                schemeName,
+                tableName,
+                fieldNames,
+                String.join(", ", Collections.nCopies(fieldTypes.size(), "?"))
+        );
+        statement = connection.prepareStatement(query);
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void writeRow(Object[] values) throws SQLException {
+        for (int i = 0; i < columnTypes.length; i++)
+            bind(i + 1, (i < values.length) ? values[i] : null, columnTypes[i]);
+
+        statement.addBatch();
+        pendingRows++;
+        rowCount++;
+
+        if (pendingRows >= batchSize)
+            executeBatch();
+    }
+
+    // Параметры запроса кодирует драйвер, поэтому объем переданных данных неизвестен
+    @Override
+    public long getBytesSent() {
+        return 0;
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (pendingRows > 0)
+            executeBatch();
+    }
+
+    @Override
+    public long finish() throws SQLException {
+        flush();
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        statement.close();
+    }
+
+    private void executeBatch() throws SQLException {
+        statement.executeBatch();
+        pendingRows = 0;
+    }
+
+    private void bind(int index, Object value, PostgresType columnType) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, toSqlType(columnType));
+        } else if (value instanceof Double d) {
+            statement.setDouble(index, d);
+        } else if (value instanceof Boolean b) {
+            statement.setBoolean(index, b);
+        } else if (value instanceof LocalDateTime dateTime) {
+            // LocalDateTime передается как timestamp без пересчета через часовой пояс JVM
+            // (Timestamp.valueOf сдвигает время, попадающее на переход на летнее время)
+            statement.setObject(index, dateTime);
+        } else {
+            statement.setString(index, String.valueOf(value));
+        }
+    }
+
+    private static int toSqlType(PostgresType columnType) {
+        return switch (columnType) {
+            case DOUBLE_PRECISION -> Types.DOUBLE;
+            case BOOLEAN -> Types.BOOLEAN;
+            case TIMESTAMP -> Types.TIMESTAMP;
+            case TEXT -> Types.VARCHAR;
+        };
+    }
+}
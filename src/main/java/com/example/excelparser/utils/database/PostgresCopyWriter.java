@@ -0,0 +1,235 @@
+package com.example.excelparser.utils.database;
+
+import lombok.NonNull;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+// Запись строк командой COPY ... FROM STDIN (текстовый или двоичный формат)
+public class PostgresCopyWriter implements PostgresRowWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] BINARY_SIGNATURE = "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+    // начало отсчета для двоичного представления TIMESTAMP
+    private static final LocalDateTime POSTGRES_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private final Connection connection;
+    private final String query;
+    private final PostgresType[] columnTypes;
+    private final boolean binary;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+    private final DataOutputStream output = new DataOutputStream(buffer);
+    private final StringBuilder text = new StringBuilder();
+    private CopyIn copyIn;
+    private long rowCount;
+    private long bytesSent;
+
+    PostgresCopyWriter(@NonNull Connection connection,
+                       @NonNull String schemeName,
+                       @NonNull String tableName,
+                       @NonNull String fieldNames,
+                       @NonNull List<String> fieldTypes,
+                       boolean binary) throws SQLException {
+        this.connection = connection;
+        this.columnTypes = PostgresType.of(fieldTypes);
+        this.binary = binary;
+
+        query = "COPY %s.%s (%s) FROM STDIN WITH (FORMAT %s)"
+                .formatted(schemeName, tableName, fieldNames, binary ? "binary" : "text");
+        startCopy();
+    }
+
+    private void startCopy() throws SQLException {
+        copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(query);
+
+        if (binary) {
+            buffer.writeBytes(BINARY_SIGNATURE);
+            // флаги и длина расширения заголовка
+            writeInt(0);
+            writeInt(0);
+        }
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void writeRow(Object[] values) throws SQLException {
+        if (copyIn == null)
+            startCopy();
+
+        if (binary)
+            writeBinaryRow(values);
+        else
+            writeTextRow(values);
+
+        rowCount++;
+        if (buffer.size() >= BUFFER_SIZE)
+            flushBuffer();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (copyIn == null)
+            return;
+
+        if (binary)
+            writeShort(-1);
+
+        flushBuffer();
+        copyIn.endCopy();
+        copyIn = null;
+    }
+
+    @Override
+    public long finish() throws SQLException {
+        flush();
+        return rowCount;
+    }
+
+    // Прерывает незавершенную передачу данных (сервер откатывает команду COPY)
+    @Override
+    public void close() throws SQLException {
+        if (copyIn != null && copyIn.isActive())
+            copyIn.cancelCopy();
+        buffer.reset();
+    }
+
+    private void flushBuffer() throws SQLException {
+        if (buffer.size() == 0)
+            return;
+
+        copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+        bytesSent += buffer.size();
+        buffer.reset();
+    }
+
+    private void writeTextRow(Object[] values) {
+        text.setLength(0);
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                text.append('\t');
+            appendText(values[i]);
+        }
+        text.append('\n');
+        buffer.writeBytes(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void appendText(Object value) {
+        if (value == null) {
+            text.append("\\N");
+            return;
+        }
+        if (value instanceof LocalDateTime dateTime) {
+            text.append(dateTime.format(DateTimeFormatter.ISO_DATE));
+            return;
+        }
+
+        String s = String.valueOf(value);
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '\\' -> text.append("\\\\");
+                case '\t' -> text.append("\\t");
+                case '\n' -> text.append("\\n");
+                case '\r' -> text.append("\\r");
+                default -> text.append(ch);
+            }
+        }
+    }
+
+    private void writeBinaryRow(Object[] values) throws SQLException {
+        writeShort(values.length);
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                writeInt(-1);
+                continue;
+            }
+
+            PostgresType columnType = columnTypes[i];
+            switch (columnType) {
+                case DOUBLE_PRECISION -> {
+                    writeInt(8);
+                    writeLong(Double.doubleToLongBits(toDouble(value, columnType)));
+                }
+                case BOOLEAN -> {
+                    writeInt(1);
+                    buffer.write(toBoolean(value, columnType) ? 1 : 0);
+                }
+                case TIMESTAMP -> {
+                    writeInt(8);
+                    writeLong(ChronoUnit.MICROS.between(POSTGRES_EPOCH, toDateTime(value, columnType)));
+                }
+                case TEXT -> {
+                    byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+                    writeInt(bytes.length);
+                    buffer.writeBytes(bytes);
+                }
+            }
+        }
+    }
+
+    private static double toDouble(Object value, PostgresType columnType) throws SQLException {
+        if (value instanceof Double d)
+            return d;
+        throw typeMismatch(value, columnType);
+    }
+
+    private static boolean toBoolean(Object value, PostgresType columnType) throws SQLException {
+        if (value instanceof Boolean b)
+            return b;
+        throw typeMismatch(value, columnType);
+    }
+
+    private static LocalDateTime toDateTime(Object value, PostgresType columnType) throws SQLException {
+        if (value instanceof LocalDateTime dateTime)
+            return dateTime;
+        throw typeMismatch(value, columnType);
+    }
+
+    private static SQLException typeMismatch(Object value, PostgresType columnType) {
+        return new SQLException("Значение \"%s\" не соответствует типу поля %s".formatted(value, columnType.getName()));
+    }
+
+    private void writeShort(int value) {
+        try {
+            output.writeShort(value);
+        } catch (IOException e) {
+            // запись в ByteArrayOutputStream не приводит к IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeInt(int value) {
+        try {
+            output.writeInt(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeLong(long value) {
+        try {
+            output.writeLong(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
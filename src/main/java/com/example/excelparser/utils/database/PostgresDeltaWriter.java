@@ -0,0 +1,251 @@
+package com.example.excelparser.utils.database;
+
+import com.example.excelparser.utils.database.PostgresQueryService.InsertMode;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Разностная загрузка: через временную таблицу изменяются только отличающиеся строки (по ключу или отпечатку строки)
+public class PostgresDeltaWriter implements PostgresRowWriter {
+    public static final String FINGERPRINT_FIELD = "excel_row_hash";
+
+    private final Connection connection;
+    private final String targetTable;
+    private final String stagingTable;
+    private final List<String> fieldNames;
+    private final List<String> keyColumns;
+    private final RowFingerprint fingerprint = new RowFingerprint();
+    private final PostgresRowWriter stagingWriter;
+    @Getter
+    private long deletedRows;
+    @Getter
+    private long updatedRows;
+    @Getter
+    private long insertedRows;
+
+    PostgresDeltaWriter(@NonNull Connection connection,
+                        @NonNull String schemeName,
+                        @NonNull String tableName,
+                        @NonNull InsertMode mode,
+                        @NonNull String fieldNames,
+                        @NonNull List<String> fieldTypes,
+                        @NonNull List<String> keyColumns,
+                        int rowsPerBatch) throws SQLException {
+        this.connection = connection;
+        // имена полей без кавычек приводятся Postgres к нижнему регистру
+        this.fieldNames = Arrays.stream(fieldNames.split(",\\s*")).map(String::toLowerCase).toList();
+        this.keyColumns = keyColumns.stream().map(String::toLowerCase).toList();
+        for (String keyColumn : this.keyColumns) {
+            if (!this.fieldNames.contains(keyColumn))
+                throw new IllegalArgumentException("Ключевое поле %s отсутствует в таблице %s".formatted(keyColumn, tableName));
+        }
+
+        targetTable = "%s.%s".formatted(schemeName, tableName);
+        String stagingName = "%s_delta".formatted(tableName);
+        stagingTable = "pg_temp." + stagingName;
+
+        execute("ALTER TABLE %s ADD COLUMN IF NOT EXISTS %s TEXT".formatted(targetTable, FINGERPRINT_FIELD));
+        execute("CREATE INDEX IF NOT EXISTS %s_%s_idx ON %s (%s)"
+                .formatted(tableName, FINGERPRINT_FIELD, targetTable, FINGERPRINT_FIELD));
+        if (!this.keyColumns.isEmpty())
+            execute("CREATE INDEX IF NOT EXISTS %s_excel_key_idx ON %s (%s)"
+                    .formatted(tableName, targetTable, String.join(", ", this.keyColumns)));
+        // временная таблица не пишется в WAL и видна только текущему соединению
+        execute("DROP TABLE IF EXISTS %s".formatted(stagingTable));
+        execute("CREATE TEMP TABLE %s AS SELECT %s, %s FROM %s WITH NO DATA"
+                .formatted(stagingName, fieldNames, FINGERPRINT_FIELD, targetTable));
+
+        var stagingTypes = new ArrayList<>(fieldTypes);
+        stagingTypes.add(PostgresType.TEXT.getName());
+        try {
+            stagingWriter = PostgresQueryService.openRowWriter(connection, "pg_temp", stagingName, mode,
+                    fieldNames + ", " + FINGERPRINT_FIELD, stagingTypes, rowsPerBatch);
+        } catch (SQLException | RuntimeException e) {
+            execute("DROP TABLE IF EXISTS %s".formatted(stagingTable));
+            throw e;
+        }
+    }
+
+    @Override
+    public void writeRow(Object[] values) throws SQLException {
+        Object[] stagingRow = Arrays.copyOf(values, values.length + 1);
+        stagingRow[values.length] = fingerprint.of(values);
+        stagingWriter.writeRow(stagingRow);
+    }
+
+    @Override
+    public long getRowCount() {
+        return stagingWriter.getRowCount();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return stagingWriter.getBytesSent();
+    }
+
+    // Строки попадают во временную таблицу; целевая таблица изменяется только в finish
+    @Override
+    public void flush() throws SQLException {
+        stagingWriter.flush();
+    }
+
+    @Override
+    public long finish() throws SQLException {
+        long rowCount = stagingWriter.finish();
+        if (!keyColumns.isEmpty()) {
+            checkKeyValues();
+            execute("CREATE INDEX ON %s (%s)".formatted(stagingTable, String.join(", ", keyColumns)));
+        }
+        execute("ANALYZE %s".formatted(stagingTable));
+
+        // в открытой транзакции вызывающего кода изменения входят в нее: фиксирует и откатывает их владелец транзакции
+        if (!connection.getAutoCommit()) {
+            applyDelta();
+        } else {
+            connection.setAutoCommit(false);
+            try {
+                applyDelta();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        execute("DROP TABLE IF EXISTS %s".formatted(stagingTable));
+        return rowCount;
+    }
+
+    // Удаляет, изменяет и добавляет строки целевой таблицы по строкам временной таблицы
+    private void applyDelta() throws SQLException {
+        if (keyColumns.isEmpty()) {
+            deletedRows = executeUpdate(deleteByFingerprintQuery());
+            insertedRows = executeUpdate(insertByFingerprintQuery());
+        } else {
+            deletedRows = executeUpdate(deleteByKeyQuery());
+            updatedRows = executeUpdate(updateByKeyQuery());
+            insertedRows = executeUpdate(insertByKeyQuery());
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            stagingWriter.close();
+        } finally {
+            execute("DROP TABLE IF EXISTS %s".formatted(stagingTable));
+        }
+    }
+
+    // Строки с пустыми ключевыми полями нельзя сопоставить со строками таблицы
+    private void checkKeyValues() throws SQLException {
+        String condition = keyColumns.stream()
+                .map(key -> key + " IS NULL")
+                .collect(Collectors.joining(" OR "));
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("SELECT count(*) FROM %s WHERE %s".formatted(stagingTable, condition))) {
+            long nullKeys = resultSet.next() ? resultSet.getLong(1) : 0;
+            if (nullKeys > 0)
+                throw new SQLException("Пустые значения ключевых полей %s в строках листа: %d".formatted(keyColumns, nullKeys));
+        }
+    }
+
+    // Лишние экземпляры строки: в целевой таблице их больше, чем во временной
+    private String deleteByFingerprintQuery() {
+        return """
+                DELETE FROM %1$s t
+                USING (
+                    SELECT ctid, %2$s, row_number() OVER (PARTITION BY %2$s) AS excel_occurrence
+                    FROM %1$s
+                ) d
+                LEFT JOIN (
+                    SELECT %2$s, count(*) AS excel_row_count
+                    FROM %3$s
+                    GROUP BY %2$s
+                ) s USING (%2$s)
+                WHERE t.ctid = d.ctid
+                    AND d.excel_occurrence > coalesce(s.excel_row_count, 0)
+                """.formatted(targetTable, FINGERPRINT_FIELD, stagingTable);
+    }
+
+    // Недостающие экземпляры строки: во временной таблице их больше, чем в целевой
+    private String insertByFingerprintQuery() {
+        return """
+                INSERT INTO %1$s (%2$s, %3$s)
+                SELECT %4$s, s.%3$s
+                FROM (
+                    SELECT *, row_number() OVER (PARTITION BY %3$s) AS excel_occurrence
+                    FROM %5$s
+                ) s
+                LEFT JOIN (
+                    SELECT %3$s, count(*) AS excel_row_count
+                    FROM %1$s
+                    GROUP BY %3$s
+                ) t USING (%3$s)
+                WHERE s.excel_occurrence > coalesce(t.excel_row_count, 0)
+                """.formatted(targetTable, String.join(", ", fieldNames), FINGERPRINT_FIELD,
+                toColumnList("s"), stagingTable);
+    }
+
+    private String deleteByKeyQuery() {
+        return """
+                DELETE FROM %s t
+                WHERE NOT EXISTS (SELECT 1 FROM %s s WHERE %s)
+                """.formatted(targetTable, stagingTable, toKeyCondition());
+    }
+
+    private String updateByKeyQuery() {
+        String assignments = fieldNames.stream()
+                .filter(field -> !keyColumns.contains(field))
+                .map(field -> "%1$s = s.%1$s".formatted(field))
+                .collect(Collectors.joining(", "));
+        return """
+                UPDATE %1$s t
+                SET %2$s%3$s = s.%3$s
+                FROM %4$s s
+                WHERE %5$s
+                    AND t.%3$s IS DISTINCT FROM s.%3$s
+                """.formatted(targetTable, assignments.isEmpty() ? "" : assignments + ", ", FINGERPRINT_FIELD,
+                stagingTable, toKeyCondition());
+    }
+
+    private String insertByKeyQuery() {
+        return """
+                INSERT INTO %1$s (%2$s, %3$s)
+                SELECT %4$s, s.%3$s
+                FROM %5$s s
+                WHERE NOT EXISTS (SELECT 1 FROM %1$s t WHERE %6$s)
+                """.formatted(targetTable, String.join(", ", fieldNames), FINGERPRINT_FIELD,
+                toColumnList("s"), stagingTable, toKeyCondition());
+    }
+
+    private String toKeyCondition() {
+        return keyColumns.stream()
+                .map(key -> "t.%1$s = s.%1$s".formatted(key))
+                .collect(Collectors.joining(" AND "));
+    }
+
+    private String toColumnList(String alias) {
+        return fieldNames.stream()
+                .map(field -> alias + "." + field)
+                .collect(Collectors.joining(", "));
+    }
+
+    private void execute(String query) throws SQLException {
+        executeUpdate(query);
+    }
+
+    private long executeUpdate(String query) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            return statement.executeLargeUpdate(query);
+        }
+    }
+}
@@ -1,26 +1,55 @@
 package com.example.excelparser.utils.database;
 
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.NonNull;
 import org.apache.nifi.logging.ComponentLog;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @AllArgsConstructor
 public class PostgresQueryService {
+    // таблица отметок о записанных порциях данных (для продолжения прерванной загрузки)
+    public static final String CHECKPOINT_TABLE = "excel_load_progress";
+    // таблица строк листов, отклоненных БД при записи в режиме карантина
+    public static final String REJECT_TABLE = "excel_rejected_rows";
+    // классы ошибок данных строк: 22 - значение (приведение типа, переполнение), 23 - ограничения целостности
+    private static final Set<String> DATA_ERROR_CLASSES = Set.of("22", "23");
+    // несоответствие типа значения типу поля
+    private static final String DATATYPE_MISMATCH = "42804";
+    // типы полей, значения которых без потерь приводятся к DOUBLE PRECISION
+    private static final Set<String> NUMERIC_TYPES = Set.of("smallint", "integer", "bigint", "real");
+
     @NonNull
     private Connection connection;
     @NonNull
     private String schemeName;
     @NonNull
+    @Getter
     private String tableName;
 //    @NonNull
     private ComponentLog logger;
+
+    public enum InsertMode {
+        // INSERT ... VALUES со строковым списком значений
+        VALUES,
+        // COPY ... FROM STDIN в текстовом формате
+        COPY_TEXT,
+        // COPY ... FROM STDIN в двоичном формате
+        COPY_BINARY,
+        // параметризованный INSERT, подготовленный один раз, с пакетной отправкой строк
+        PREPARED
+    }
     
     private void debug(final String msg) {
         System.out.println("[debug]: " + msg);
@@ -31,22 +60,95 @@ public class PostgresQueryService {
     }
 
     public boolean tryCreateTable(Map<String, String> postgresTypes) {
+        return tryCreateTable(postgresTypes, false);
+    }
+
+    // Создает таблицу БД или приводит структуру существующей таблицы к полям листа.
+    // widenToText - разрешено ли приводить к TEXT поля другого типа: тип TEXT формируется и по пустой
+    // ячейке первой строки данных, а изменение типа переписывает таблицу под исключительной блокировкой
+    public boolean tryCreateTable(Map<String, String> postgresTypes, boolean widenToText) {
         debug("Проверка сущестовования таблицы БД");
-        // проверка сущестовования таблицы БД
-        final boolean exists = checkIfTableExists(connection, schemeName, tableName);
-        debug("Таблица БД существует: " + exists);
-        if (exists)
-            return true;
+        // описание таблиц схемы берется из общего кэша БД
+        final Optional<Map<String, String>> columns;
+        try {
+            columns = SchemaCatalog.of(connection).getColumns(connection, schemeName, tableName);
+        } catch (SQLException e) {
+            error(e.getMessage());
+            return false;
+        }
+        debug("Таблица БД существует: " + columns.isPresent());
+        if (columns.isPresent())
+            return evolveTable(columns.get(), postgresTypes, widenToText);
 
         // создание таблицы БД
         String fieldsDefinition = toFieldsDefinition(postgresTypes);
         debug("Создание таблицы БД");
         boolean success = createTable(connection, schemeName, tableName, fieldsDefinition);
         debug("Таблица БД создана: " + success);
+        invalidateSchema();
 
         return success;
     }
 
+    // Добавляет недостающие поля и расширяет типы полей, в которые не помещаются значения листа
+    private boolean evolveTable(final Map<String, String> columns,
+                                final Map<String, String> postgresTypes,
+                                final boolean widenToText) {
+        var queries = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : postgresTypes.entrySet()) {
+            String fieldName = entry.getKey();
+            String fieldType = entry.getValue();
+            String columnType = columns.get(fieldName.toLowerCase());
+            if (Objects.isNull(columnType)) {
+                queries.add("ALTER TABLE %s.%s ADD COLUMN %s %s;".formatted(schemeName, tableName, fieldName, fieldType));
+            } else if (isWidening(columnType, fieldType, widenToText)) {
+                queries.add("ALTER TABLE %1$s.%2$s ALTER COLUMN %3$s TYPE %4$s USING %3$s::%4$s;"
+                        .formatted(schemeName, tableName, fieldName, fieldType));
+            } else if (toPostgresType(columnType).filter(type -> type == PostgresType.of(fieldType)).isEmpty()) {
+                debug("Тип поля %s (%s) отличается от типа данных листа (%s)".formatted(fieldName, columnType, fieldType));
+            }
+        }
+        if (queries.isEmpty())
+            return true;
+
+        debug("Изменение структуры таблицы БД:\n" + String.join("\n", queries));
+        boolean success = executeInTransaction(queries.toArray(String[]::new));
+        invalidateSchema();
+        return success;
+    }
+
+    // Расширение типа поля: целые числа - в DOUBLE PRECISION, даты - в TIMESTAMP, любые значения - в TEXT (если разрешено)
+    private static boolean isWidening(final String columnType, final String fieldType, final boolean widenToText) {
+        return switch (PostgresType.of(fieldType)) {
+            case TEXT -> widenToText && toPostgresType(columnType).filter(type -> type == PostgresType.TEXT).isEmpty();
+            case DOUBLE_PRECISION -> NUMERIC_TYPES.contains(columnType);
+            case TIMESTAMP -> "date".equals(columnType);
+            case BOOLEAN -> false;
+        };
+    }
+
+    // Тип поля по имени из format_type (пусто для типов, которые не формируются по данным листа)
+    private static Optional<PostgresType> toPostgresType(final String columnType) {
+        if (columnType.startsWith("character") || "text".equals(columnType))
+            return Optional.of(PostgresType.TEXT);
+        if (columnType.startsWith("timestamp"))
+            return Optional.of(PostgresType.TIMESTAMP);
+        return switch (columnType) {
+            case "double precision" -> Optional.of(PostgresType.DOUBLE_PRECISION);
+            case "boolean" -> Optional.of(PostgresType.BOOLEAN);
+            default -> Optional.empty();
+        };
+    }
+
+    // Описание таблиц схемы загружается заново после изменения их структуры или ошибки записи
+    private void invalidateSchema() {
+        try {
+            SchemaCatalog.of(connection).invalidate(schemeName);
+        } catch (SQLException e) {
+            error(e.getMessage());
+        }
+    }
+
     public static String toFieldNames(Map<String, String> postgresTypes) {
         return postgresTypes.keySet()
                 .stream()
@@ -78,27 +180,6 @@ public class PostgresQueryService {
         }
     }
 
-    private boolean checkIfTableExists(final Connection connection,
-                                       final String schemeName,
-                                       final String tableName) {
-        final String query = """
-                    SELECT EXISTS (
-                        SELECT 1
-                        FROM information_schema.tables
-                        WHERE table_schema ILIKE '%s'
-                            AND table_name ILIKE '%s'
-                    );
-                    """.formatted(schemeName, tableName);
-
-        try (var statement = connection.createStatement()) {
-            ResultSet resultSet = statement.executeQuery(query);
-            return resultSet.next() && resultSet.getBoolean("exists");
-        } catch (SQLException e) {
-            error(e.getMessage());
-            return false;
-        }
-    }
-
     private boolean createTable(final Connection connection,
                                 final String schemeName,
                                 final String tableName,
@@ -118,9 +199,365 @@ public class PostgresQueryService {
         return executeUpdate(connection, query);
     }
 
-    public boolean insertData(final String fieldNames, final String fieldValues) {
+    public PostgresTransaction beginTransaction() throws SQLException {
+        return new PostgresTransaction(connection);
+    }
+
+    // Синхронная фиксация транзакций в текущем сеансе (false - synchronous_commit = off)
+    public boolean setSynchronousCommit(final boolean enabled) {
+        debug("Синхронная фиксация транзакций: " + enabled);
+        return executeUpdate(connection, enabled ? "RESET synchronous_commit;" : "SET synchronous_commit = off;");
+    }
 
+    public boolean tryCreateCheckpointTable() {
         final String query = """
+                CREATE TABLE IF NOT EXISTS %s.%s (
+                    file_hash TEXT NOT NULL,
+                    sheet_name TEXT NOT NULL,
+                    table_name TEXT NOT NULL,
+                    last_row INTEGER NOT NULL,
+                    updated_at TIMESTAMP NOT NULL DEFAULT now(),
+                    PRIMARY KEY (file_hash, sheet_name, table_name)
+                );
+                """.formatted(schemeName, CHECKPOINT_TABLE);
+
+        return executeUpdate(connection, query);
+    }
+
+    // Индекс последней записанной строки листа при прерванной загрузке этой же книги в таблицу
+    public Optional<Integer> getCheckpoint(final String fileHash, final String sheetName) {
+        final String query = """
+                SELECT last_row FROM %s.%s
+                WHERE file_hash = ? AND sheet_name = ? AND table_name = ?;
+                """.formatted(schemeName, CHECKPOINT_TABLE);
+
+        try (var statement = connection.prepareStatement(query)) {
+            statement.setString(1, fileHash);
+            statement.setString(2, sheetName);
+            statement.setString(3, tableName);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? Optional.of(resultSet.getInt("last_row")) : Optional.empty();
+        } catch (SQLException e) {
+            error(e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public boolean saveCheckpoint(final String fileHash, final String sheetName, final int lastRow) {
+        final String query = """
+                INSERT INTO %s.%s (file_hash, sheet_name, table_name, last_row)
+                VALUES (?, ?, ?, ?)
+                ON CONFLICT (file_hash, sheet_name, table_name)
+                DO UPDATE SET last_row = EXCLUDED.last_row, updated_at = now();
+                """.formatted(schemeName, CHECKPOINT_TABLE);
+
+        try (var statement = connection.prepareStatement(query)) {
+            statement.setString(1, fileHash);
+            statement.setString(2, sheetName);
+            statement.setString(3, tableName);
+            statement.setInt(4, lastRow);
+            statement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            error(e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean removeCheckpoint(final String fileHash, final String sheetName) {
+        final String query = """
+                DELETE FROM %s.%s
+                WHERE file_hash = ? AND sheet_name = ? AND table_name = ?;
+                """.formatted(schemeName, CHECKPOINT_TABLE);
+
+        try (var statement = connection.prepareStatement(query)) {
+            statement.setString(1, fileHash);
+            statement.setString(2, sheetName);
+            statement.setString(3, tableName);
+            statement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            error(e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean tryCreateRejectTable() {
+        final String query = """
+                CREATE TABLE IF NOT EXISTS %s.%s (
+                    id BIGSERIAL PRIMARY KEY,
+                    table_name TEXT NOT NULL,
+                    sheet_name TEXT NOT NULL,
+                    row_index INTEGER NOT NULL,
+                    error_message TEXT NOT NULL,
+                    row_values TEXT,
+                    rejected_at TIMESTAMP NOT NULL DEFAULT now()
+                );
+                """.formatted(schemeName, REJECT_TABLE);
+
+        boolean success = executeUpdate(connection, query);
+        invalidateSchema();
+        return success;
+    }
+
+    // Сохраняет отклоненную строку листа вместе с текстом ошибки и значениями строки
+    public boolean saveRejectedRow(final String sheetName, final int rowIndex, final String errorMessage, final String rowValues) {
+        final String query = """
+                INSERT INTO %s.%s (table_name, sheet_name, row_index, error_message, row_values)
+                VALUES (?, ?, ?, ?, ?);
+                """.formatted(schemeName, REJECT_TABLE);
+
+        try (var statement = connection.prepareStatement(query)) {
+            statement.setString(1, tableName);
+            statement.setString(2, sheetName);
+            statement.setInt(3, rowIndex);
+            statement.setString(4, errorMessage);
+            statement.setString(5, rowValues);
+            statement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            error(e.getMessage());
+            return false;
+        }
+    }
+
+    // Сервис для другой таблицы той же схемы через то же соединение
+    public PostgresQueryService forTable(final String tableName) {
+        return new PostgresQueryService(connection, schemeName, tableName, logger);
+    }
+
+    // Нежурналируемая промежуточная таблица со структурой, индексами и ограничениями целевой таблицы
+    public boolean createStagingTable(final String stagingTableName) {
+        final String query = """
+                CREATE UNLOGGED TABLE %1$s.%2$s (LIKE %1$s.%3$s INCLUDING ALL);
+                """.formatted(schemeName, stagingTableName, tableName);
+
+        boolean success = executeUpdate(connection, query);
+        invalidateSchema();
+        return success;
+    }
+
+    // Замена целевой таблицы промежуточной: удаление и переименование в одной короткой транзакции.
+    // Промежуточная таблица заранее становится журналируемой, в транзакции получает владельца, права,
+    // последовательности полей и имена индексов целевой таблицы
+    public boolean swapStagingTable(final String stagingTableName) {
+        debug("Замена таблицы БД промежуточной таблицей");
+        final List<String> queries;
+        try {
+            // представления, внешние ключи и триггеры при замене таблицы были бы потеряны
+            List<String> blockers = findSwapBlockers();
+            if (!blockers.isEmpty()) {
+                error("Замена таблицы %s.%s промежуточной невозможна: %s"
+                        .formatted(schemeName, tableName, String.join("; ", blockers)));
+                return false;
+            }
+            queries = toSwapQueries(stagingTableName);
+        } catch (SQLException e) {
+            error(e.getMessage());
+            return false;
+        }
+
+        // перезапись нежурналируемой таблицы выполняется до транзакции и не блокирует целевую таблицу
+        if (!executeUpdate(connection, "ALTER TABLE %s.%s SET LOGGED;".formatted(schemeName, stagingTableName)))
+            return false;
+
+        boolean success = executeInTransaction(queries.toArray(String[]::new));
+        invalidateSchema();
+        return success;
+    }
+
+    private List<String> findSwapBlockers() throws SQLException {
+        var blockers = new ArrayList<String>();
+        List<String> views = selectStrings("""
+                SELECT DISTINCT v.oid::regclass::text
+                FROM pg_catalog.pg_depend d
+                    JOIN pg_catalog.pg_rewrite r ON r.oid = d.objid
+                    JOIN pg_catalog.pg_class v ON v.oid = r.ev_class
+                WHERE d.classid = 'pg_catalog.pg_rewrite'::regclass
+                    AND d.refobjid = to_regclass(?)
+                    AND v.oid <> d.refobjid;
+                """);
+        if (!views.isEmpty())
+            blockers.add("зависящие представления " + String.join(", ", views));
+
+        List<String> foreignKeys = selectStrings("""
+                SELECT conname || ' (' || conrelid::regclass::text || ')'
+                FROM pg_catalog.pg_constraint
+                WHERE contype = 'f' AND (confrelid = to_regclass(?) OR conrelid = to_regclass(?));
+                """);
+        if (!foreignKeys.isEmpty())
+            blockers.add("внешние ключи " + String.join(", ", foreignKeys));
+
+        List<String> triggers = selectStrings("""
+                SELECT tgname FROM pg_catalog.pg_trigger
+                WHERE tgrelid = to_regclass(?) AND NOT tgisinternal;
+                """);
+        if (!triggers.isEmpty())
+            blockers.add("триггеры " + String.join(", ", triggers));
+        return blockers;
+    }
+
+    // Запросы транзакции замены: владелец, права и последовательности целевой таблицы передаются промежуточной,
+    // целевая таблица удаляется, промежуточная и ее индексы получают имена целевой
+    private List<String> toSwapQueries(final String stagingTableName) throws SQLException {
+        String staging = "%s.%s".formatted(schemeName, stagingTableName);
+        var queries = new ArrayList<String>();
+        for (String owner : selectStrings("""
+                SELECT quote_ident(pg_get_userbyid(relowner)) FROM pg_catalog.pg_class WHERE oid = to_regclass(?);
+                """))
+            queries.add("ALTER TABLE %s OWNER TO %s;".formatted(staging, owner));
+
+        for (String grant : selectStrings("""
+                SELECT a.privilege_type || ' ON %s TO '
+                    || CASE WHEN a.grantee = 0 THEN 'PUBLIC' ELSE quote_ident(pg_get_userbyid(a.grantee)) END
+                    || CASE WHEN a.is_grantable THEN ' WITH GRANT OPTION' ELSE '' END
+                FROM pg_catalog.pg_class c, aclexplode(c.relacl) a
+                WHERE c.oid = to_regclass(?);
+                """.formatted(staging)))
+            queries.add("GRANT %s;".formatted(grant));
+
+        // последовательности полей serial удаляются вместе с таблицей-владельцем
+        for (String sequence : selectStrings("""
+                SELECT s.oid::regclass::text || ' OWNED BY %s.' || quote_ident(a.attname)
+                FROM pg_catalog.pg_depend d
+                    JOIN pg_catalog.pg_class s ON s.oid = d.objid AND s.relkind = 'S'
+                    JOIN pg_catalog.pg_attribute a ON a.attrelid = d.refobjid AND a.attnum = d.refobjsubid
+                WHERE d.classid = 'pg_catalog.pg_class'::regclass
+                    AND d.refobjid = to_regclass(?)
+                    AND d.deptype = 'a';
+                """.formatted(staging)))
+            queries.add("ALTER SEQUENCE %s;".formatted(sequence));
+
+        queries.add("DROP TABLE %s.%s;".formatted(schemeName, tableName));
+        queries.add("ALTER TABLE %s RENAME TO %s;".formatted(staging, tableName));
+        // индексы промежуточной таблицы названы по ее имени
+        for (String index : selectStrings(staging, """
+                SELECT i.relname FROM pg_catalog.pg_index x JOIN pg_catalog.pg_class i ON i.oid = x.indexrelid
+                WHERE x.indrelid = to_regclass(?);
+                """)) {
+            if (index.startsWith(stagingTableName))
+                queries.add("ALTER INDEX %s.%s RENAME TO %s;"
+                        .formatted(schemeName, index, tableName + index.substring(stagingTableName.length())));
+        }
+        return queries;
+    }
+
+    // Первая колонка строк результата запроса; все параметры запроса - имя целевой таблицы
+    private List<String> selectStrings(final String query) throws SQLException {
+        return selectStrings("%s.%s".formatted(schemeName, tableName), query);
+    }
+
+    private List<String> selectStrings(final String qualifiedTableName, final String query) throws SQLException {
+        var result = new ArrayList<String>();
+        try (var statement = connection.prepareStatement(query)) {
+            long parameterCount = query.chars().filter(c -> c == '?').count();
+            for (int i = 1; i <= parameterCount; i++)
+                statement.setString(i, qualifiedTableName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    result.add(resultSet.getString(1));
+            }
+        }
+        return result;
+    }
+
+    // Перенос строк промежуточной таблицы в целевую одной транзакцией
+    public boolean appendStagingTable(final String stagingTableName, final String fieldNames) {
+        debug("Перенос данных промежуточной таблицы в таблицу БД");
+        boolean success = executeInTransaction(
+                "INSERT INTO %1$s.%2$s (%4$s) SELECT %4$s FROM %1$s.%3$s;"
+                        .formatted(schemeName, tableName, stagingTableName, fieldNames),
+                "DROP TABLE %s.%s;".formatted(schemeName, stagingTableName)
+        );
+        invalidateSchema();
+        return success;
+    }
+
+    public boolean dropTable(final String dropTableName) {
+        boolean success = executeUpdate(connection, "DROP TABLE IF EXISTS %s.%s;".formatted(schemeName, dropTableName));
+        invalidateSchema();
+        return success;
+    }
+
+    // Запросы выполняются одной транзакцией. Если соединение уже в транзакции вызывающего кода
+    // (BatchCommitter, PostgresTransaction), она не фиксируется: запросы выполняются до точки сохранения
+    private boolean executeInTransaction(final String... queries) {
+        try {
+            final boolean autoCommit = connection.getAutoCommit();
+            if (!autoCommit)
+                return executeInSavepoint(queries);
+
+            connection.setAutoCommit(false);
+            try (var statement = connection.createStatement()) {
+                for (String query : queries)
+                    statement.executeUpdate(query);
+                connection.commit();
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                error(e.getMessage());
+                return false;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            error(e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean executeInSavepoint(final String... queries) throws SQLException {
+        Savepoint savepoint = connection.setSavepoint();
+        try (var statement = connection.createStatement()) {
+            for (String query : queries)
+                statement.executeUpdate(query);
+        } catch (SQLException e) {
+            connection.rollback(savepoint);
+            error(e.getMessage());
+            return false;
+        }
+        connection.releaseSavepoint(savepoint);
+        return true;
+    }
+
+    public boolean insertData(final String fieldNames, final String fieldValues) {
+        boolean success = executeUpdate(connection, toInsertQuery(fieldNames, fieldValues));
+        // структура таблицы могла быть изменена вне загрузчика
+        if (!success)
+            invalidateSchema();
+        return success;
+    }
+
+    // Запись строк значений, отклоненных БД из-за данных: возвращается текст ошибки, а изменения запроса
+    // отменяются (в открытой транзакции - до точки сохранения, чтобы транзакция оставалась рабочей).
+    // Остальные ошибки (нет таблицы или поля, нет прав, взаимоблокировка, соединение) передаются вызывающему коду
+    public Optional<String> tryInsertData(final String fieldNames, final String fieldValues) throws SQLException {
+        Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+        try (var statement = connection.createStatement()) {
+            statement.executeUpdate(toInsertQuery(fieldNames, fieldValues));
+        } catch (SQLException e) {
+            if (Objects.nonNull(savepoint))
+                connection.rollback(savepoint);
+            if (!isDataError(e)) {
+                invalidateSchema();
+                throw e;
+            }
+            return Optional.of(Objects.requireNonNullElse(e.getMessage(), e.toString()));
+        }
+        if (Objects.nonNull(savepoint))
+            connection.releaseSavepoint(savepoint);
+        return Optional.empty();
+    }
+
+    // Ошибка вызвана значениями строк (повтор записи по частям порции имеет смысл)
+    static boolean isDataError(final SQLException e) {
+        String state = e.getSQLState();
+        return Objects.nonNull(state) && state.length() == 5
+                && (DATA_ERROR_CLASSES.contains(state.substring(0, 2)) || DATATYPE_MISMATCH.equals(state));
+    }
+
+    private String toInsertQuery(final String fieldNames, final String fieldValues) {
+        return """
                 INSERT INTO %s.%s (%s)
                 VALUES %s;
                 """.formatted(
@@ -129,7 +566,49 @@ public class PostgresQueryService {
                         fieldNames,
                         fieldValues
                 );
+    }
 
-        return executeUpdate(connection, query);
+    // Открывает построчную запись данных заданным способом
+    public PostgresRowWriter openRowWriter(final InsertMode mode,
+                                           final String fieldNames,
+                                           final List<String> fieldTypes,
+                                           final int rowsPerBatch) throws SQLException {
+        debug("Начало записи данных в БД (%s)".formatted(mode));
+        return openRowWriter(connection, schemeName, tableName, mode, fieldNames, fieldTypes, rowsPerBatch);
+    }
+
+    // Открывает разностную запись: изменяются только строки, отличающиеся от уже загруженных
+    public PostgresDeltaWriter openDeltaWriter(final InsertMode mode,
+                                               final String fieldNames,
+                                               final List<String> fieldTypes,
+                                               final List<String> keyColumns,
+                                               final int rowsPerBatch) throws SQLException {
+        debug("Начало разностной записи данных в БД (%s, ключевые поля: %s)".formatted(mode, keyColumns));
+        // разностная запись добавляет в таблицу поле отпечатков строк
+        invalidateSchema();
+        return new PostgresDeltaWriter(connection, schemeName, tableName, mode, fieldNames, fieldTypes, keyColumns, rowsPerBatch);
+    }
+
+    static PostgresRowWriter openRowWriter(final Connection connection,
+                                           final String schemeName,
+                                           final String tableName,
+                                           final InsertMode mode,
+                                           final String fieldNames,
+                                           final List<String> fieldTypes,
+                                           final int rowsPerBatch) throws SQLException {
+        switch (mode) {
+            case COPY_TEXT -> {
+                return new PostgresCopyWriter(connection, schemeName, tableName, fieldNames, fieldTypes, false);
+            }
+            case COPY_BINARY -> {
+                return new PostgresCopyWriter(connection, schemeName, tableName, fieldNames, fieldTypes, true);
+            }
+            case PREPARED -> {
+                return new PostgresBatchInserter(connection, schemeName, tableName, fieldNames, fieldTypes, rowsPerBatch);
+            }
+            default -> {
+                return new PostgresValuesWriter(connection, schemeName, tableName, fieldNames, rowsPerBatch);
+            }
+        }
     }
 }
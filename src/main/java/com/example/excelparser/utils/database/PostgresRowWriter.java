@@ -0,0 +1,25 @@
+package com.example.excelparser.utils.database;
+
+import java.sql.SQLException;
+
+// Построчная запись типизированных значений полей в таблицу БД
+public interface PostgresRowWriter extends AutoCloseable {
+
+    void writeRow(Object[] values) throws SQLException;
+
+    // Количество переданных строк
+    long getRowCount();
+
+    // Объем данных, переданных серверу (0, если неизвестен)
+    long getBytesSent();
+
+    // Передает в БД накопленные строки: после вызова они входят в текущую транзакцию соединения
+    void flush() throws SQLException;
+
+    // Завершает запись и возвращает количество записанных строк
+    long finish() throws SQLException;
+
+    // Освобождает ресурсы; незавершенная запись прерывается
+    @Override
+    void close() throws SQLException;
+}
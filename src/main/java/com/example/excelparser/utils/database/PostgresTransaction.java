@@ -0,0 +1,36 @@
+package com.example.excelparser.utils.database;
+
+import lombok.NonNull;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Явная транзакция на соединении: при закрытии незафиксированные изменения откатываются
+public class PostgresTransaction implements AutoCloseable {
+    private final Connection connection;
+    private final boolean autoCommit;
+
+    PostgresTransaction(@NonNull Connection connection) throws SQLException {
+        this.connection = connection;
+        autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+    }
+
+    public void commit() throws SQLException {
+        connection.commit();
+    }
+
+    public void rollback() throws SQLException {
+        connection.rollback();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            // включение автоматической фиксации зафиксировало бы открытую транзакцию
+            connection.rollback();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
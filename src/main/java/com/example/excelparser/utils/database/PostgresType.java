@@ -0,0 +1,36 @@
+package com.example.excelparser.utils.database;
+
+import lombok.Getter;
+
+import java.util.List;
+
+// Типы полей таблиц, формируемые по данным листа
+public enum PostgresType {
+    DOUBLE_PRECISION("DOUBLE PRECISION"),
+    TIMESTAMP("TIMESTAMP"),
+    BOOLEAN("BOOLEAN"),
+    TEXT("TEXT");
+
+    @Getter
+    private final String name;
+
+    PostgresType(String name) {
+        this.name = name;
+    }
+
+    // Тип по имени; неизвестные типы записываются как текст
+    public static PostgresType of(String name) {
+        for (PostgresType type : values()) {
+            if (type.name.equalsIgnoreCase(name))
+                return type;
+        }
+        return TEXT;
+    }
+
+    public static PostgresType[] of(List<String> names) {
+        var result = new PostgresType[names.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = of(names.get(i));
+        return result;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.excelparser.utils.database;
+
+import jakarta.annotation.Nullable;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+// Формирование строк значений INSERT ... VALUES в переиспользуемом буфере (экземпляр не потокобезопасен)
+public class PostgresValuesEncoder {
+    private final StringBuilder buffer;
+    // начало и конец строки i в буфере: rowBounds[2 * i], rowBounds[2 * i + 1]
+    private int[] rowBounds = new int[256];
+    private int rowCount;
+    private boolean firstValue;
+
+    public PostgresValuesEncoder(int initialCapacity) {
+        buffer = new StringBuilder(initialCapacity);
+    }
+
+    // Очищает буфер перед формированием новой порции строк (выделенная память сохраняется)
+    public void reset() {
+        buffer.setLength(0);
+        rowCount = 0;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    public void beginRow() {
+        if (rowCount > 0)
+            buffer.append(", ");
+        if (2 * rowCount + 1 >= rowBounds.length)
+            rowBounds = Arrays.copyOf(rowBounds, rowBounds.length * 2);
+        rowBounds[2 * rowCount] = buffer.length();
+        buffer.append('(');
+        firstValue = true;
+    }
+
+    public void endRow() {
+        buffer.append(')');
+        rowBounds[2 * rowCount + 1] = buffer.length();
+        rowCount++;
+    }
+
+    public void appendNull() {
+        separate();
+        buffer.append("null");
+    }
+
+    public void appendDouble(double value) {
+        separate();
+        // StringBuilder.append(double) дает то же представление, что и Double.toString
+        buffer.append('\'').append(value).append('\'');
+    }
+
+    public void appendBoolean(boolean value) {
+        separate();
+        buffer.append('\'').append(value).append('\'');
+    }
+
+    // Дата записывается без времени (как DateTimeFormatter.ISO_DATE)
+    public void appendDate(LocalDateTime value) {
+        separate();
+        buffer.append('\'');
+        int year = value.getYear();
+        if (year < 0 || year > 9999) {
+            buffer.append(value.format(DateTimeFormatter.ISO_DATE));
+        } else {
+            appendPadded(year, 4);
+            buffer.append('-');
+            appendPadded(value.getMonthValue(), 2);
+            buffer.append('-');
+            appendPadded(value.getDayOfMonth(), 2);
+        }
+        buffer.append('\'');
+    }
+
+    // Кавычки внутри текста удваиваются; обратная косая черта записывается как есть
+    // (строковые константы без E-префикса при standard_conforming_strings = on, по умолчанию в Postgres)
+    public void appendText(CharSequence value) {
+        separate();
+        buffer.append('\'');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char ch = value.charAt(i);
+            if (ch == '\'')
+                buffer.append('\'');
+            buffer.append(ch);
+        }
+        buffer.append('\'');
+    }
+
+    // Значение, уже приведенное к типу поля (Double, LocalDateTime, Boolean, String или null)
+    public void appendValue(@Nullable Object value) {
+        if (value == null)
+            appendNull();
+        else if (value instanceof Double d)
+            appendDouble(d);
+        else if (value instanceof Boolean b)
+            appendBoolean(b);
+        else if (value instanceof LocalDateTime dateTime)
+            appendDate(dateTime);
+        else
+            appendText(String.valueOf(value));
+    }
+
+    // Итоговая строка значений порции; буфер остается доступным для следующей порции
+    public String build() {
+        return buffer.toString();
+    }
+
+    // Границы строк порции в буфере: начало и конец строки i - элементы 2 * i и 2 * i + 1
+    public int[] getRowBounds() {
+        return Arrays.copyOf(rowBounds, 2 * rowCount);
+    }
+
+    // Строки значений порции с rowFrom по rowTo включительно (номера строк в порции, начиная с 0)
+    public String build(int rowFrom, int rowTo) {
+        if (rowFrom < 0 || rowTo >= rowCount || rowFrom > rowTo)
+            throw new IndexOutOfBoundsException("Диапазон строк [%d, %d] вне порции из %d строк".formatted(rowFrom, rowTo, rowCount));
+        return buffer.substring(rowBounds[2 * rowFrom], rowBounds[2 * rowTo + 1]);
+    }
+
+    // Размер строки в кодировке UTF-8 без ее преобразования в массив байтов
+    public static long utf8Length(CharSequence value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch < 0x80) {
+                length++;
+            } else if (ch < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(ch)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void separate() {
+        if (firstValue)
+            firstValue = false;
+        else
+            buffer.append(", ");
+    }
+
+    private void appendPadded(int value, int width) {
+        for (int limit = 10, i = 1; i < width; i++, limit *= 10) {
+            if (value < limit)
+                buffer.append('0');
+        }
+        buffer.append(value);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.excelparser.utils.database;
+
+import lombok.NonNull;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Запись типизированных строк запросом INSERT ... VALUES порциями по batchSize строк
+public class PostgresValuesWriter implements PostgresRowWriter {
+    private static final int BUFFER_CAPACITY = 64 * 1024;
+
+    private final Connection connection;
+    private final String queryPrefix;
+    private final int batchSize;
+    private final PostgresValuesEncoder encoder = new PostgresValuesEncoder(BUFFER_CAPACITY);
+    private long rowCount;
+    private long bytesSent;
+
+    PostgresValuesWriter(@NonNull Connection connection,
+                         @NonNull String schemeName,
+                         @NonNull String tableName,
+                         @NonNull String fieldNames,
+                         int batchSize) {
+        this.connection = connection;
+        this.batchSize = Math.max(1, batchSize);
+        queryPrefix = "INSERT INTO %s.%s (%s) VALUES ".formatted(schemeName, tableName, fieldNames);
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void writeRow(Object[] values) throws SQLException {
+        encoder.beginRow();
+        for (Object value : values)
+            encoder.appendValue(value);
+        encoder.endRow();
+        rowCount++;
+
+        if (encoder.getRowCount() >= batchSize)
+            executeBatch();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (!encoder.isEmpty())
+            executeBatch();
+    }
+
+    @Override
+    public long finish() throws SQLException {
+        flush();
+        return rowCount;
+    }
+
+    @Override
+    public void close() {
+        encoder.reset();
+    }
+
+    private void executeBatch() throws SQLException {
+        String query = queryPrefix + encoder.build();
+        try (var statement = connection.createStatement()) {
+            statement.executeUpdate(query);
+        }
+        bytesSent += PostgresValuesEncoder.utf8Length(query);
+        encoder.reset();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.excelparser.utils.database;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+
+// Отпечаток строки: MD5 канонического текста значений полей (экземпляр не потокобезопасен)
+class RowFingerprint {
+    // разделитель значений, не встречающийся в обычном тексте ячеек
+    private static final char SEPARATOR = '\u001f';
+
+    private final MessageDigest digest;
+    private final StringBuilder text = new StringBuilder();
+
+    RowFingerprint() {
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    String of(Object[] values) {
+        text.setLength(0);
+        for (Object value : values) {
+            // признак типа отличает, например, число 1.0 от строки "1.0"
+            if (value == null)
+                text.append('n');
+            else if (value instanceof Double d)
+                text.append('d').append(d.doubleValue());
+            else if (value instanceof Boolean b)
+                text.append('b').append(b.booleanValue());
+            else if (value instanceof LocalDateTime dateTime)
+                text.append('t').append(dateTime.format(DateTimeFormatter.ISO_DATE));
+            else
+                text.append('s').append(value);
+            text.append(SEPARATOR);
+        }
+        return HexFormat.of().formatHex(digest.digest(text.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.excelparser.utils.database;
+
+import lombok.NonNull;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Кэш описания таблиц схем БД (поля и типы) с TTL, общий для соединений с одной БД под одним пользователем
+public class SchemaCatalog {
+    private static final Duration DEFAULT_TTL = Duration.ofMinutes(1);
+    private static final Map<String, SchemaCatalog> CATALOGS = new ConcurrentHashMap<>();
+
+    private static final String COLUMNS_QUERY = """
+            SELECT c.relname AS table_name, a.attname AS column_name, format_type(a.atttypid, a.atttypmod) AS column_type
+            FROM pg_catalog.pg_attribute a
+                JOIN pg_catalog.pg_class c ON c.oid = a.attrelid
+                JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace
+            WHERE n.nspname = ?
+                AND c.relkind IN ('r', 'p')
+                AND a.attnum > 0
+                AND NOT a.attisdropped
+            ORDER BY c.relname, a.attnum;
+            """;
+
+    private final long ttlNanos;
+    // схема -> описание таблиц схемы (загружаемое или загруженное)
+    private final Map<String, CompletableFuture<Snapshot>> schemas = new ConcurrentHashMap<>();
+
+    // Описание таблиц схемы (таблица -> (поле -> тип)) и время его загрузки
+    private record Snapshot(Map<String, Map<String, String>> tables, long loadedAt) {
+    }
+
+    SchemaCatalog(Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    // Кэш БД, к которой относится соединение (создается при первом обращении)
+    public static SchemaCatalog of(@NonNull Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String key = metaData.getURL() + "|" + metaData.getUserName();
+        return CATALOGS.computeIfAbsent(key, k -> new SchemaCatalog(DEFAULT_TTL));
+    }
+
+    // Поля таблицы в порядке их следования (пусто, если таблицы нет); описание схемы читается через connection.
+    // Устаревшее описание схемы загружает один поток вне блокировок, остальные потоки ожидают его результат
+    public Optional<Map<String, String>> getColumns(Connection connection,
+                                                    String schemeName,
+                                                    String tableName) throws SQLException {
+        String schemeKey = schemeName.toLowerCase();
+        long now = System.nanoTime();
+        var loading = new CompletableFuture<Snapshot>();
+        CompletableFuture<Snapshot> snapshot = schemas.compute(schemeKey,
+                (key, current) -> isFresh(current, now) ? current : loading);
+        if (snapshot == loading) {
+            try {
+                loading.complete(new Snapshot(loadSchema(connection, schemeKey), now));
+            } catch (SQLException | RuntimeException e) {
+                schemas.remove(schemeKey, loading);
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return Optional.ofNullable(await(snapshot).tables().get(tableName.toLowerCase())).map(Collections::unmodifiableMap);
+    }
+
+    // Сбрасывает описание схемы после изменения структуры ее таблиц
+    public void invalidate(String schemeName) {
+        schemas.remove(schemeName.toLowerCase());
+    }
+
+    public void invalidate() {
+        schemas.clear();
+    }
+
+    // Описание загружается другим потоком или загружено не ранее TTL назад
+    private boolean isFresh(CompletableFuture<Snapshot> snapshot, long now) {
+        if (Objects.isNull(snapshot) || snapshot.isCompletedExceptionally())
+            return false;
+        return !snapshot.isDone() || now - snapshot.join().loadedAt() < ttlNanos;
+    }
+
+    private static Snapshot await(CompletableFuture<Snapshot> snapshot) throws SQLException {
+        try {
+            return snapshot.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sqlException)
+                throw sqlException;
+            throw e;
+        }
+    }
+
+    private static Map<String, Map<String, String>> loadSchema(Connection connection, String schemeName) throws SQLException {
+        var tables = new HashMap<String, Map<String, String>>();
+        try (var statement = connection.prepareStatement(COLUMNS_QUERY)) {
+            statement.setString(1, schemeName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    tables.computeIfAbsent(resultSet.getString("table_name"), name -> new LinkedHashMap<>())
+                            .put(resultSet.getString("column_name"), resultSet.getString("column_type"));
+                }
+            }
+        }
+        return tables;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.excelparser.utils.excel;
+
+import com.example.excelparser.utils.database.PostgresQueryService;
+import com.example.excelparser.utils.database.PostgresRowWriter;
+import com.example.excelparser.utils.database.PostgresTransaction;
+import com.example.excelparser.utils.excel.DatabaseWriter.TransactionPolicy;
+import jakarta.annotation.Nullable;
+
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Optional;
+
+// Фиксирует записанные порции таблицы согласно политике транзакций. При включенных отметках
+// (только для стратегии DIRECT) вместе с порциями фиксируется отметка о последней записанной строке
+class BatchCommitter implements AutoCloseable {
+    private final PostgresQueryService queryService;
+    private final QueryPropertyHolder holder;
+    private final TransactionPolicy policy;
+    private final int commitInterval;
+    private final boolean checkpoint;
+    private final String fileHash;
+    private final PostgresTransaction transaction;
+    private final int startRow;
+    private final boolean resumed;
+    private boolean asynchronous;
+    private int uncommittedBatches;
+
+    // fileHash - хэш файла книги для отметок о записанных строках (null, если отметки не ведутся)
+    BatchCommitter(PostgresQueryService queryService,
+                   QueryPropertyHolder holder,
+                   TransactionPolicy transactionPolicy,
+                   int commitInterval,
+                   boolean synchronousCommit,
+                   @Nullable String fileHash) throws RuntimeException {
+        this.queryService = queryService;
+        this.holder = holder;
+        this.commitInterval = commitInterval;
+        this.fileHash = fileHash;
+        checkpoint = Objects.nonNull(fileHash);
+        // отметка имеет смысл только вместе с фиксацией порций, к которым она относится
+        policy = (checkpoint && TransactionPolicy.NONE == transactionPolicy)
+                ? TransactionPolicy.PER_BATCH
+                : transactionPolicy;
+
+        if (checkpoint) {
+            if (!queryService.tryCreateCheckpointTable())
+                throw new RuntimeException("Не удалось создать таблицу отметок загрузки");
+
+            Optional<Integer> lastRow = queryService.getCheckpoint(fileHash, holder.getSheetName());
+            resumed = lastRow.isPresent();
+            startRow = lastRow.map(row -> row + 1).orElse(holder.getFirstDataRow());
+            if (resumed)
+                DatabaseWriter.logInfo("Продолжение прерванной загрузки со строки %d".formatted(startRow));
+        } else {
+            resumed = false;
+            startRow = holder.getFirstDataRow();
+        }
+
+        // параметр сеанса задается до начала транзакции, иначе откат транзакции отменил бы его
+        if (!synchronousCommit) {
+            if (!queryService.setSynchronousCommit(false))
+                throw new RuntimeException("Не удалось отключить синхронную фиксацию транзакций");
+            asynchronous = true;
+        }
+
+        if (TransactionPolicy.NONE == policy) {
+            transaction = null;
+            return;
+        }
+        try {
+            transaction = queryService.beginTransaction();
+        } catch (SQLException e) {
+            close();
+            throw new RuntimeException("Не удалось начать транзакцию", e);
+        }
+    }
+
+    // Индекс первой строки листа, которую нужно записать
+    int getStartRow() {
+        return startRow;
+    }
+
+    boolean isResumed() {
+        return resumed;
+    }
+
+    // Отмечает записанную порцию (до строки lastRow включительно) и фиксирует транзакцию, если пришло время
+    void commit(@Nullable PostgresRowWriter rowWriter, int lastRow) throws RuntimeException {
+        if (Objects.isNull(transaction))
+            return;
+
+        uncommittedBatches++;
+        if (TransactionPolicy.WHOLE_TABLE == policy
+                || (TransactionPolicy.EVERY_N_BATCHES == policy && uncommittedBatches < commitInterval))
+            return;
+        try {
+            if (Objects.nonNull(rowWriter))
+                rowWriter.flush();
+            if (checkpoint && !queryService.saveCheckpoint(fileHash, holder.getSheetName(), lastRow))
+                throw new RuntimeException("Не удалось сохранить отметку о записанных строках");
+            transaction.commit();
+            uncommittedBatches = 0;
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось зафиксировать записанные строки", e);
+        }
+    }
+
+    // Загрузка завершена: фиксируются оставшиеся порции, отметка удаляется
+    void complete() throws RuntimeException {
+        if (Objects.isNull(transaction))
+            return;
+        try {
+            if (checkpoint && !queryService.removeCheckpoint(fileHash, holder.getSheetName()))
+                throw new RuntimeException("Не удалось удалить отметку загрузки");
+            transaction.commit();
+            uncommittedBatches = 0;
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось зафиксировать записанные строки", e);
+        }
+    }
+
+    // Незафиксированные порции откатываются; отметка указывает на последнюю зафиксированную порцию
+    @Override
+    public void close() throws RuntimeException {
+        if (Objects.nonNull(transaction)) {
+            if (uncommittedBatches > 0)
+                DatabaseWriter.logInfo("Откат незафиксированных порций данных: %d".formatted(uncommittedBatches));
+            try {
+                transaction.close();
+            } catch (SQLException e) {
+                DatabaseWriter.logInfo("Не удалось завершить транзакцию: " + e.getMessage());
+            }
+        }
+        if (asynchronous) {
+            asynchronous = false;
+            queryService.setSynchronousCommit(true);
+        }
+    }
+}
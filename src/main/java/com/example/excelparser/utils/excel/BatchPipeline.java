@@ -0,0 +1,90 @@
+package com.example.excelparser.utils.excel;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Конвейер "чтение -> запись": порции формируются в отдельном потоке и передаются через ограниченную очередь
+public class BatchPipeline<T> {
+    // признак окончания данных в очереди
+    private static final Object END = new Object();
+    private final int queueDepth;
+
+    @FunctionalInterface
+    public interface BatchProducer<T> {
+        void produce(Consumer<T> sink) throws RuntimeException;
+    }
+
+    public BatchPipeline(int queueDepth) {
+        if (queueDepth < 1)
+            throw new IllegalArgumentException("Глубина очереди должна быть больше нуля");
+        this.queueDepth = queueDepth;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void run(BatchProducer<T> producer, Consumer<T> consumer) throws RuntimeException {
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueDepth);
+        var producerError = new AtomicReference<RuntimeException>();
+
+        Thread readerThread = Thread.ofPlatform()
+                .name("excel-parser-reader")
+                .daemon(true)
+                .start(() -> {
+                    try {
+                        producer.produce(batch -> put(queue, batch));
+                        put(queue, END);
+                    } catch (RuntimeException e) {
+                        producerError.set(e);
+                        // при прерывании потока этап записи уже завершен и признак окончания не нужен
+                        if (!Thread.currentThread().isInterrupted())
+                            putQuietly(queue, END);
+                    }
+                });
+
+        try {
+            Object item;
+            while ((item = queue.take()) != END)
+                consumer.accept((T) item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            readerThread.interrupt();
+            throw new RuntimeException("Запись данных прервана", e);
+        } catch (RuntimeException e) {
+            // ошибка записи - останавливаем этап чтения
+            readerThread.interrupt();
+            throw e;
+        } finally {
+            join(readerThread);
+        }
+
+        if (Objects.nonNull(producerError.get()))
+            throw producerError.get();
+    }
+
+    private static void put(BlockingQueue<Object> queue, Object item) throws RuntimeException {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Чтение данных прервано", e);
+        }
+    }
+
+    private static void putQuietly(BlockingQueue<Object> queue, Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
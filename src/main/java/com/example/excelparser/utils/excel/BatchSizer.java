@@ -0,0 +1,71 @@
+package com.example.excelparser.utils.excel;
+
+import java.time.Duration;
+
+// Размер порции данных в строках; в адаптивном режиме подстраивается под объем и время записи порции
+class BatchSizer {
+    // ограничение изменения размера за одну порцию (сглаживает колебания времени записи)
+    private static final double MAX_GROWTH = 2.0;
+    private static final double MAX_SHRINK = 0.5;
+
+    private final boolean adaptive;
+    private final int minRows;
+    private final int maxRows;
+    private final long targetBytes;
+    private final long targetNanos;
+    private int batchRows;
+    // средний размер строки в байтах (0 - неизвестен)
+    private double rowBytes;
+
+    private BatchSizer(boolean adaptive, int initialRows, int minRows, int maxRows, long targetBytes, Duration targetLatency) {
+        this.adaptive = adaptive;
+        this.minRows = minRows;
+        this.maxRows = maxRows;
+        this.targetBytes = targetBytes;
+        this.targetNanos = targetLatency.toNanos();
+        batchRows = clamp(initialRows);
+    }
+
+    static BatchSizer fixed(int rowsPerBatch) {
+        return new BatchSizer(false, rowsPerBatch, rowsPerBatch, rowsPerBatch, Long.MAX_VALUE, Duration.ZERO);
+    }
+
+    static BatchSizer adaptive(int initialRows, int minRows, int maxRows, long targetBytes, Duration targetLatency) {
+        return new BatchSizer(true, initialRows, minRows, maxRows, targetBytes, targetLatency);
+    }
+
+    boolean isAdaptive() {
+        return adaptive;
+    }
+
+    // Наибольший возможный размер порции
+    int getMaxRows() {
+        return maxRows;
+    }
+
+    synchronized int getBatchRows() {
+        return batchRows;
+    }
+
+    // Учитывает записанную порцию: количество строк, переданные байты (0 - неизвестны) и время записи
+    synchronized void onBatchWritten(int rows, long bytes, long nanos) {
+        if (!adaptive || rows <= 0)
+            return;
+
+        if (bytes > 0) {
+            double batchRowBytes = (double) bytes / rows;
+            rowBytes = (rowBytes == 0) ? batchRowBytes : (rowBytes + batchRowBytes) / 2;
+        }
+
+        double scale = (nanos > 0) ? (double) targetNanos / nanos : MAX_GROWTH;
+        double next = rows * Math.max(MAX_SHRINK, Math.min(MAX_GROWTH, scale));
+        if (rowBytes > 0)
+            next = Math.min(next, targetBytes / rowBytes);
+
+        batchRows = clamp((long) next);
+    }
+
+    private int clamp(long rows) {
+        return (int) Math.max(minRows, Math.min(maxRows, rows));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.excelparser.utils.excel;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class BookFiles {
+
+    // Сохраняет входной поток во временный файл, чтобы читать архив книги с диска, а не из памяти
+    public static Path spoolToTempFile(InputStream inputStream) throws IOException {
+        Path path = Files.createTempFile("excel-parser-", ".xlsx");
+        try {
+            Files.copy(inputStream, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return path;
+    }
+
+    // Значение тега книги в метриках: имя файла (книга из входного потока - "stream")
+    static String getBookTag(Path path, boolean temporary) {
+        return temporary ? "stream" : String.valueOf(path.getFileName());
+    }
+
+    // Хэш SHA-256 содержимого файла книги (шестнадцатеричная строка)
+    public static String sha256(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream input = new DigestInputStream(Files.newInputStream(path), digest)) {
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.excelparser.utils.excel;
+
+import com.example.excelparser.utils.database.PostgresQueryService;
+import com.example.excelparser.utils.database.PostgresType;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+// Скомпилированный план колонок таблицы: индекс ячейки листа и тип поля для каждого поля
+public class ColumnPlan {
+    @Getter
+    private final String fieldNames;
+    @Getter
+    private final List<String> fieldTypes;
+    private final int[] columnIndexes;
+    private final PostgresType[] columnTypes;
+
+    private ColumnPlan(String fieldNames, List<String> fieldTypes, int columnFromIndex, int columnToIndex) {
+        this.fieldNames = fieldNames;
+        this.fieldTypes = List.copyOf(fieldTypes);
+
+        // поля формируются до columnToIndex
+        int size = Math.max(0, Math.min(fieldTypes.size(), columnToIndex - columnFromIndex + 1));
+        columnIndexes = new int[size];
+        columnTypes = new PostgresType[size];
+        for (int i = 0; i < size; i++) {
+            // ячейка, смещенная на columnFromIndex относительно начальной колонки
+            columnIndexes[i] = columnFromIndex + i;
+            columnTypes[i] = PostgresType.of(fieldTypes.get(i));
+        }
+    }
+
+    public static ColumnPlan compile(Map<String, String> postgresTypes,
+                                     Optional<QueryPropertyHolder.DataColumnInfo> dataColumnInfo) {
+        List<String> fieldTypes = PostgresQueryService.toFieldTypes(postgresTypes);
+        QueryPropertyHolder.DataColumnInfo columnInfo = dataColumnInfo.orElse(null);
+        // если индексы колонок не заданы, берем диапазон списка полей
+        int columnFrom = Objects.nonNull(columnInfo) ? columnInfo.getFrom() : 0;
+        int columnTo = Objects.nonNull(columnInfo) ? columnInfo.getTo() : fieldTypes.size() - 1;
+
+        return new ColumnPlan(PostgresQueryService.toFieldNames(postgresTypes), fieldTypes, columnFrom, columnTo);
+    }
+
+    public static ColumnPlan compile(List<String> fieldTypes, int columnFromIndex, int columnToIndex) {
+        return new ColumnPlan("", fieldTypes, columnFromIndex, columnToIndex);
+    }
+
+    // Количество формируемых полей строки
+    public int size() {
+        return columnIndexes.length;
+    }
+
+    public int getColumnIndex(int field) {
+        return columnIndexes[field];
+    }
+
+    public PostgresType getColumnType(int field) {
+        return columnTypes[field];
+    }
+}
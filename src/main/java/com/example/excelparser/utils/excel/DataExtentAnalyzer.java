@@ -0,0 +1,36 @@
+package com.example.excelparser.utils.excel;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+
+import java.util.Objects;
+
+// Последняя строка данных листа: пустые оформленные строки в конце листа отбрасываются
+public class DataExtentAnalyzer {
+
+    // Индекс последней строки диапазона [rowFrom, rowTo] со значениями по индексу листа (rowFrom - 1, если значений нет)
+    public static int findLastDataRow(SheetIndex index, int rowFrom, int rowTo, ColumnPlan plan) {
+        int[] columns = new int[plan.size()];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = plan.getColumnIndex(i);
+        return Math.max(rowFrom - 1, index.getLastRow(rowFrom, rowTo, columns));
+    }
+
+    // Есть ли в строке значения в колонках плана
+    public static boolean hasValues(Row row, ColumnPlan plan) {
+        for (int i = 0; i < plan.size(); i++) {
+            if (!SheetIndex.isBlank(row.getCell(plan.getColumnIndex(i), Row.MissingCellPolicy.RETURN_BLANK_AS_NULL)))
+                return true;
+        }
+        return false;
+    }
+
+    public static boolean hasValues(StreamingBookReader.StreamingRow row, ColumnPlan plan) {
+        for (int i = 0; i < plan.size(); i++) {
+            StreamingBookReader.StreamingCell cell = row.getCell(plan.getColumnIndex(i));
+            if (Objects.nonNull(cell) && !(CellType.STRING == cell.getType() && cell.getValue().isBlank()))
+                return true;
+        }
+        return false;
+    }
+}
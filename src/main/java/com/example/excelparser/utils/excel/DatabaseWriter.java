@@ -1,32 +1,125 @@
 package com.example.excelparser.utils.excel;
 
+import com.example.excelparser.utils.database.PostgresDeltaWriter;
 import com.example.excelparser.utils.database.PostgresQueryService;
+import com.example.excelparser.utils.database.PostgresQueryService.InsertMode;
+import com.example.excelparser.utils.database.PostgresRowWriter;
+import com.example.excelparser.utils.database.PostgresValuesEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.Nullable;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.apache.nifi.logging.ComponentLog;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 
+import java.io.IOException;
+import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class DatabaseWriter {
-    @NonNull
+    private static final String STAGING_TABLE_SUFFIX = "_staging_";
+    // наибольшая длина имени таблицы Postgres
+    private static final int MAX_IDENTIFIER_LENGTH = 63;
+
     private Connection connection;
-    @NonNull
+    // пул соединений: каждая таблица записывается через отдельное соединение
+    @Getter(AccessLevel.PACKAGE)
+    private DataSource dataSource;
     private ExcelBookReader bookReader;
+    private StreamingBookReader streamingReader;
     private String schemeName;
+    @Getter(AccessLevel.PACKAGE)
     private boolean overwrite;
 //    @NonNull
     private ComponentLog logger;
     int rowsPerBatch;
+    private InsertMode insertMode;
+    // способ записи для отдельных таблиц (имя таблицы -> способ записи)
+    private Map<String, InsertMode> tableInsertModes;
+    // конвейерная обработка: чтение следующих порций данных параллельно с записью в БД
+    private boolean pipelined;
+    private int pipelineQueueDepth;
+    // количество таблиц, записываемых одновременно (при заданном dataSource)
+    private int parallelism;
+    @Getter(AccessLevel.PACKAGE)
+    private LoadStrategy loadStrategy;
+    // ключевые поля для разностной загрузки (имя таблицы -> имена полей)
+    private Map<String, List<String>> tableKeyColumns;
+    // отметки о записанных порциях: прерванная загрузка той же книги продолжается с первой незаписанной строки
+    private boolean checkpointed;
+    private TransactionPolicy transactionPolicy;
+    // количество порций в одной транзакции (для EVERY_N_BATCHES)
+    private int commitInterval;
+    // false - synchronous_commit = off на время записи таблицы
+    private boolean synchronousCommit;
+    // реестр метрик записи таблиц
+    @Getter(AccessLevel.PACKAGE)
+    private MeterRegistry meterRegistry;
+    // адаптивный размер порций: от minRowsPerBatch до maxRowsPerBatch строк, не более targetBatchBytes байтов,
+    // время записи порции - около targetBatchLatency
+    private boolean adaptiveBatching;
+    private long targetBatchBytes;
+    private int minRowsPerBatch;
+    private int maxRowsPerBatch;
+    private Duration targetBatchLatency;
+    // запись всех таблиц листа за один проход чтения (потоковое чтение, при заданном dataSource)
+    private boolean fanOut;
+    // количество пустых строк подряд, после которого данные листа считаются закончившимися (потоковое чтение)
+    @Getter(AccessLevel.PACKAGE)
+    private int emptyRowLimit;
+    // количество потоков преобразования строк листа в порции данных (DOM-модель книги)
+    private int conversionParallelism;
+    // передача порций на запись в порядке строк листа (иначе - по мере готовности)
+    private boolean orderedConversion;
+    // строки, отклоненные БД, сохраняются в таблицу отклоненных строк, остальные строки порции записываются
+    private boolean errorTolerant;
+    // приведение к TEXT полей существующей таблицы, тип которых не совпадает с типом данных листа
+    private boolean widenColumnsToText;
+
+    public enum LoadStrategy {
+        // очистка таблицы (при overwrite) и запись всех строк листа
+        DIRECT,
+        // запись только отличающихся строк по отпечаткам значений (overwrite не используется)
+        DELTA,
+        // запись в нежурналируемую промежуточную таблицу с последующей заменой ею целевой таблицы (при overwrite,
+        // переименованием) или переносом строк в целевую таблицу одной транзакцией
+        STAGING
+    }
+
+    public enum TransactionPolicy {
+        // транзакциями управляет вызывающий код (используется режим фиксации соединения)
+        NONE,
+        // каждая порция фиксируется отдельной транзакцией
+        PER_BATCH,
+        // транзакция фиксируется каждые commitInterval порций
+        EVERY_N_BATCHES,
+        // вся таблица записывается одной транзакцией
+        WHOLE_TABLE
+    }
 
-    private void logInfo(String msg) {
+    static void logInfo(String msg) {
         System.out.println(msg);
     }
 
@@ -35,21 +128,282 @@ public class DatabaseWriter {
     }
 
     public void write(List<QueryPropertyHolder> queryPropertyHolders) throws RuntimeException {
-        queryPropertyHolders.forEach(this::write);
+        if (fanOut && Objects.nonNull(streamingReader) && Objects.nonNull(dataSource)) {
+            checkDistinctTables(queryPropertyHolders);
+            writeFanOut(queryPropertyHolders);
+            return;
+        }
+
+        if (parallelism > 1 && Objects.nonNull(dataSource) && queryPropertyHolders.size() > 1) {
+            checkDistinctTables(queryPropertyHolders);
+            writeParallel(queryPropertyHolders);
+        } else {
+            queryPropertyHolders.forEach(this::write);
+        }
+    }
+
+    // Одновременная запись нескольких листов в одну таблицу недопустима: загрузки очищают и заменяют данные
+    // друг друга, а ошибки записи собираются по именам таблиц
+    private void checkDistinctTables(List<QueryPropertyHolder> queryPropertyHolders) throws RuntimeException {
+        var tableNames = new HashSet<String>();
+        for (QueryPropertyHolder holder : queryPropertyHolders) {
+            if (!tableNames.add(holder.getDbTableName().toLowerCase()))
+                throw new RuntimeException("Таблица %s указана для записи несколько раз".formatted(holder.getDbTableName()));
+        }
     }
 
     public void write(QueryPropertyHolder holder) throws RuntimeException {
+        if (Objects.nonNull(connection)) {
+            write(holder, connection);
+            return;
+        }
+
+        try (Connection pooledConnection = dataSource.getConnection()) {
+            write(holder, pooledConnection);
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось получить соединение с БД", e);
+        }
+    }
+
+    // Параллельная запись таблиц: ошибки собираются по таблицам и не прерывают запись остальных
+    private void writeParallel(List<QueryPropertyHolder> queryPropertyHolders) throws TableWriteException {
+        logInfo("Параллельная запись таблиц (потоков: %d)".formatted(parallelism));
+        // futures.get(i) - запись таблицы queryPropertyHolders.get(i)
+        var futures = new ArrayList<Future<?>>();
+        var errors = new LinkedHashMap<String, RuntimeException>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, queryPropertyHolders.size()));
+        try {
+            for (QueryPropertyHolder holder : queryPropertyHolders)
+                futures.add(executor.submit(() -> writeWithPooledConnection(holder)));
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    errors.put(queryPropertyHolders.get(i).getDbTableName(), (cause instanceof RuntimeException runtimeException)
+                            ? runtimeException
+                            : new RuntimeException(cause));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Запись таблиц прервана", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!errors.isEmpty())
+            throw new TableWriteException(errors);
+    }
+
+    private void writeWithPooledConnection(QueryPropertyHolder holder) throws RuntimeException {
+        try (Connection pooledConnection = dataSource.getConnection()) {
+            write(holder, pooledConnection);
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось получить соединение с БД", e);
+        } catch (RuntimeException e) {
+            logInfo("Ошибка записи таблицы %s: %s".formatted(holder.getDbTableName(), e.getMessage()));
+            throw e;
+        }
+    }
+
+    private void write(QueryPropertyHolder holder, Connection connection) throws RuntimeException {
+        var metrics = new TableMetrics(meterRegistry, holder);
+        metrics.recordTable(() -> {
+            if (Objects.nonNull(streamingReader))
+                writeStreaming(holder, connection, metrics);
+            else
+                writeBook(holder, connection, metrics);
+        });
+    }
+
+    // Размер порций записи таблицы: постоянный (rowsPerBatch) или подбираемый по объему и времени записи порций
+    BatchSizer createBatchSizer() {
+        return adaptiveBatching
+                ? BatchSizer.adaptive(rowsPerBatch, minRowsPerBatch, maxRowsPerBatch, targetBatchBytes, targetBatchLatency)
+                : BatchSizer.fixed(rowsPerBatch);
+    }
+
+    private void writeBook(QueryPropertyHolder holder, Connection connection, TableMetrics metrics) throws RuntimeException {
         Sheet sheet = bookReader.getWorkbook().getSheet(holder.getSheetName());
         String tableName = holder.getDbTableName();
 
-        Map<String, String> postgresTypes = preparePostgresTypes(sheet, holder);
+        Map<String, String> postgresTypes = metrics.recordTypeInference(() -> preparePostgresTypes(sheet, holder));
         var databaseService = new PostgresQueryService(connection, schemeName, tableName, logger);
         tryCreateTable(databaseService, postgresTypes);
 
-        if (overwrite)
-            truncateTable(databaseService);
+        try (BatchCommitter committer = createCommitter(databaseService, holder)) {
+            // при продолжении прерванной загрузки уже записанные строки сохраняются
+            if (overwrite && LoadStrategy.DIRECT == loadStrategy && !committer.isResumed())
+                truncateTable(databaseService);
+
+            // план колонок строится один раз на таблицу и используется для всех строк листа
+            ColumnPlan plan = ColumnPlan.compile(postgresTypes, holder.getDataColumnInfo());
+            InsertMode mode = getInsertMode(tableName);
+            BatchSizer batchSizer = createBatchSizer();
+            if (LoadStrategy.STAGING != loadStrategy) {
+                writeSheet(databaseService, sheet, holder, plan, mode, committer, metrics, batchSizer);
+                committer.complete();
+                return;
+            }
+
+            PostgresQueryService stagingService = createStagingTable(databaseService, tableName);
+            try {
+                writeSheet(stagingService, sheet, holder, plan, mode, committer, metrics, batchSizer);
+            } catch (RuntimeException e) {
+                stagingService.dropTable(stagingService.getTableName());
+                throw e;
+            }
+            applyStagingTable(databaseService, stagingService, plan);
+            committer.complete();
+        }
+    }
 
-        writeData(databaseService, sheet, holder, postgresTypes);
+    private void writeSheet(final PostgresQueryService queryService,
+                            final Sheet sheet,
+                            final QueryPropertyHolder holder,
+                            final ColumnPlan plan,
+                            final InsertMode mode,
+                            final BatchCommitter committer,
+                            final TableMetrics metrics,
+                            final BatchSizer batchSizer) throws RuntimeException {
+        if (InsertMode.VALUES == mode && LoadStrategy.DELTA != loadStrategy)
+            writeData(queryService, sheet, holder, plan, committer, metrics, batchSizer);
+        else
+            writeRows(queryService, sheet, holder, plan, mode, committer, metrics, batchSizer);
+    }
+
+    private String getFileHash() throws RuntimeException {
+        try {
+            return Objects.nonNull(streamingReader) ? streamingReader.getFileHash() : bookReader.getFileHash();
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось вычислить хэш файла книги", e);
+        }
+    }
+
+    // Промежуточная таблица с уникальным именем: одновременные загрузки одной таблицы не мешают друг другу
+    // Отметки о записанных порциях ведутся только при прямой записи в целевую таблицу
+    BatchCommitter createCommitter(final PostgresQueryService queryService,
+                                   final QueryPropertyHolder holder) throws RuntimeException {
+        boolean checkpoint = checkpointed && LoadStrategy.DIRECT == loadStrategy;
+        return new BatchCommitter(queryService, holder, transactionPolicy, commitInterval, synchronousCommit,
+                checkpoint ? getFileHash() : null);
+    }
+
+    PostgresQueryService createStagingTable(final PostgresQueryService queryService,
+                                                    final String tableName) throws RuntimeException {
+        String suffix = STAGING_TABLE_SUFFIX + UUID.randomUUID().toString().substring(0, 8);
+        String stagingTableName = tableName.substring(0, Math.min(tableName.length(), MAX_IDENTIFIER_LENGTH - suffix.length())) + suffix;
+        logInfo("Создание промежуточной таблицы %s".formatted(stagingTableName));
+        if (!queryService.createStagingTable(stagingTableName))
+            throw new RuntimeException("Не удалось создать промежуточную таблицу %s".formatted(stagingTableName));
+
+        return queryService.forTable(stagingTableName);
+    }
+
+    // Замена целевой таблицы промежуточной (overwrite) или перенос в нее строк промежуточной таблицы
+    void applyStagingTable(final PostgresQueryService queryService,
+                                   final PostgresQueryService stagingService,
+                                   final ColumnPlan plan) throws RuntimeException {
+        String stagingTableName = stagingService.getTableName();
+        boolean success = overwrite
+                ? queryService.swapStagingTable(stagingTableName)
+                : queryService.appendStagingTable(stagingTableName, plan.getFieldNames());
+        if (!success) {
+            queryService.dropTable(stagingTableName);
+            throw new RuntimeException("Не удалось перенести данные промежуточной таблицы %s".formatted(stagingTableName));
+        }
+        logInfo("Данные промежуточной таблицы перенесены в таблицу БД");
+    }
+
+    InsertMode getInsertMode(String tableName) {
+        return tableInsertModes.getOrDefault(tableName, insertMode);
+    }
+
+    // Открывает построчную запись в таблицу с учетом стратегии загрузки
+    PostgresRowWriter openRowWriter(final PostgresQueryService queryService,
+                                            final String tableName,
+                                            final ColumnPlan plan,
+                                            final InsertMode mode,
+                                            final BatchSizer batchSizer) throws SQLException {
+        // при адаптивном размере порций строки передаются в БД по границам порций (flush), а не самим средством записи
+        int batchSize = batchSizer.getMaxRows();
+        if (LoadStrategy.DELTA == loadStrategy)
+            return queryService.openDeltaWriter(mode, plan.getFieldNames(), plan.getFieldTypes(),
+                    tableKeyColumns.getOrDefault(tableName, List.of()), batchSize);
+
+        return queryService.openRowWriter(mode, plan.getFieldNames(), plan.getFieldTypes(), batchSize);
+    }
+
+    void logWriteResult(final PostgresRowWriter rowWriter, final long rowCount) {
+        logInfo("Данные успешно записаны в БД (строк: %d)".formatted(rowCount));
+        if (rowWriter instanceof PostgresDeltaWriter deltaWriter)
+            logInfo("Изменения таблицы: добавлено %d, изменено %d, удалено %d".formatted(
+                    deltaWriter.getInsertedRows(), deltaWriter.getUpdatedRows(), deltaWriter.getDeletedRows()));
+    }
+
+    // Запись данных листа за один потоковый проход без построения DOM-модели книги
+    private void writeStreaming(QueryPropertyHolder holder, Connection connection, TableMetrics metrics) throws RuntimeException {
+        var tableWriter = openStreamingTable(connection, holder, metrics);
+
+        logInfo("Потоковое чтение листа \"%s\"".formatted(holder.getSheetName()));
+        try (tableWriter) {
+            if (!streamingReader.readSheet(holder.getSheetName(), tableWriter))
+                throw new RuntimeException("Лист \"%s\" не найден".formatted(holder.getSheetName()));
+            tableWriter.finish();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    StreamingTableWriter openStreamingTable(final Connection connection,
+                                            final QueryPropertyHolder holder,
+                                            final TableMetrics metrics) {
+        var databaseService = new PostgresQueryService(connection, schemeName, holder.getDbTableName(), logger);
+        return new StreamingTableWriter(this, streamingReader, databaseService, holder, metrics);
+    }
+
+    // Запись таблиц с группировкой по листам: таблицы одного листа получают строки за один проход чтения.
+    // Ошибки собираются по таблицам и не прерывают запись остальных
+    private void writeFanOut(List<QueryPropertyHolder> queryPropertyHolders) throws TableWriteException {
+        var sheetHolders = new LinkedHashMap<String, List<QueryPropertyHolder>>();
+        for (QueryPropertyHolder holder : queryPropertyHolders)
+            sheetHolders.computeIfAbsent(holder.getSheetName(), name -> new ArrayList<>()).add(holder);
+
+        var errors = new LinkedHashMap<String, RuntimeException>();
+        for (Map.Entry<String, List<QueryPropertyHolder>> entry : sheetHolders.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                writeSheetTables(entry.getKey(), entry.getValue(), errors);
+                continue;
+            }
+
+            QueryPropertyHolder holder = entry.getValue().get(0);
+            try {
+                writeWithPooledConnection(holder);
+            } catch (RuntimeException e) {
+                errors.put(holder.getDbTableName(), e);
+            }
+        }
+
+        if (!errors.isEmpty())
+            throw new TableWriteException(errors);
+    }
+
+    // Один потоковый проход по листу: каждая строка передается всем таблицам листа
+    private void writeSheetTables(final String sheetName,
+                                  final List<QueryPropertyHolder> holders,
+                                  final Map<String, RuntimeException> errors) {
+        logInfo("Потоковое чтение листа \"%s\" для таблиц: %s".formatted(sheetName,
+                String.join(", ", holders.stream().map(QueryPropertyHolder::getDbTableName).toList())));
+        try (var fanOutHandler = new FanOutRowHandler(this, holders, errors)) {
+            boolean found = streamingReader.readSheet(sheetName, fanOutHandler);
+            fanOutHandler.finish(found);
+        } catch (IOException e) {
+            var error = new RuntimeException(e);
+            holders.forEach(holder -> errors.putIfAbsent(holder.getDbTableName(), error));
+        }
     }
 
     private Map<String, String> preparePostgresTypes(final Sheet sheet,
@@ -65,17 +419,17 @@ public class DatabaseWriter {
         return postgresTypes;
     }
 
-    private void tryCreateTable(final PostgresQueryService queryService,
+    void tryCreateTable(final PostgresQueryService queryService,
                                 final Map<String, String> postgresTypes) throws RuntimeException {
         logInfo("Подготовка таблицы БД к наполнению");
         // попытка создания таблицы
-        if (!queryService.tryCreateTable(postgresTypes)) {
+        if (!queryService.tryCreateTable(postgresTypes, widenColumnsToText)) {
             throw new RuntimeException("Не удалось создать таблицу БД");
         }
         logInfo("Таблица БД готова к наполнению");
     }
 
-    private void truncateTable(final PostgresQueryService queryService) throws RuntimeException {
+    void truncateTable(final PostgresQueryService queryService) throws RuntimeException {
         logInfo("Очистка таблицы БД");
         if (!queryService.truncateTable())
             throw new RuntimeException("Не удалось очистить таблицу БД");
@@ -86,59 +440,279 @@ public class DatabaseWriter {
     private void writeData(final PostgresQueryService queryService,
                            final Sheet sheet,
                            final QueryPropertyHolder holder,
-                           final Map<String, String> postgresTypes) throws RuntimeException {
+                           final ColumnPlan plan,
+                           final BatchCommitter committer,
+                           final TableMetrics metrics,
+                           final BatchSizer batchSizer) throws RuntimeException {
         logInfo("Подготовка данных для записи в БД");
-        // имена полей
-        String fieldNames = PostgresQueryService.toFieldNames(postgresTypes);
+        RowQuarantine quarantine = createQuarantine(queryService, holder, plan);
+        this.<RowBatch<ValuesBatch>>runBatches(
+                sink -> prepareValuesBatches(sheet, holder, plan, committer.getStartRow(), metrics, batchSizer, sink),
+                batch -> {
+                    ValuesBatch values = batch.getData();
+                    // порция из одних отсутствующих строк (пропуск в данных листа) не записывается
+                    if (values.isEmpty())
+                        return;
+
+                    long started = System.nanoTime();
+                    int rejected = 0;
+                    try {
+                        if (Objects.isNull(quarantine))
+                            insertBatch(queryService, plan.getFieldNames(), batch);
+                        else
+                            // части порции берутся из уже сформированных строк значений
+                            rejected = insertBatch(quarantine, values.getRowIndexes(), values.getValues(),
+                                    values::getValues, metrics);
+                    } catch (RuntimeException e) {
+                        metrics.batchFailed();
+                        throw e;
+                    }
+                    long writeNanos = System.nanoTime() - started;
+                    metrics.recordWrite(writeNanos);
+                    committer.commit(null, batch.getRowTo());
+
+                    int rowCount = values.getRowCount();
+                    long bytes = PostgresValuesEncoder.utf8Length(values.getValues());
+                    metrics.addRows(rowCount - rejected);
+                    metrics.addBytes(bytes);
+                    batchSizer.onBatchWritten(rowCount, bytes, writeNanos);
+                }
+        );
 
-        int rowFrom = holder.getFirstDataRow();
+        logInfo("Данные успешно записаны в БД");
+    }
+
+    // Передает порции данных этапу записи: напрямую или через конвейер с ограниченной очередью
+    private <T> void runBatches(final BatchPipeline.BatchProducer<T> producer,
+                                final Consumer<T> consumer) throws RuntimeException {
+        if (pipelined)
+            new BatchPipeline<T>(pipelineQueueDepth).run(producer, consumer);
+        else
+            producer.produce(consumer);
+    }
+
+    // Формирует строки значений полей порциями (размер порции задает batchSizer)
+    private void prepareValuesBatches(final Sheet sheet,
+                                      final QueryPropertyHolder holder,
+                                      final ColumnPlan plan,
+                                      final int startRow,
+                                      final TableMetrics metrics,
+                                      final BatchSizer batchSizer,
+                                      final Consumer<RowBatch<ValuesBatch>> sink) throws RuntimeException {
+        int rowFrom = startRow;
         // убеждаемся, что заданный индекс последней строки данных не выходит за рамки данных листа
-        int lastDataRow = Math.min(
-                holder.getLastDataRow().orElse(sheet.getLastRowNum()),
-                sheet.getLastRowNum()
-        );
+        int lastDataRow = getLastDataRow(sheet, holder, plan);
+        int conversionThreads = getConversionParallelism();
+        if (conversionThreads > 1) {
+            new ParallelBatchConverter(conversionThreads, isConversionOrdered()).convert(
+                    rowFrom, lastDataRow, batchSizer::getBatchRows,
+                    (batchFrom, batchTo) -> convertValuesBatch(sheet, plan, batchFrom, batchTo, metrics),
+                    sink);
+            return;
+        }
         // значения полей
         while (rowFrom <= lastDataRow) {
             // убеждаемся, что при обработке пачки данных не вышли за индекс последней строки данных
-            int rowTo = Math.min(rowFrom + rowsPerBatch - 1, lastDataRow);
-            String indexRangeString = "[%d, %d]".formatted(rowFrom, rowTo);
+            int rowTo = Math.min(rowFrom + batchSizer.getBatchRows() - 1, lastDataRow);
+            sink.accept(convertValuesBatch(sheet, plan, rowFrom, rowTo, metrics));
+            rowFrom = rowTo + 1;
+        }
+    }
 
-            logInfo("Подготовка порции данных %s для записи в БД.".formatted(indexRangeString));
-            // формирование строки значений полей
-            Optional<String> fieldValues = toFieldValues(sheet, postgresTypes, holder, rowFrom, rowTo);
+    // Формирует строку значений полей диапазона строк [rowFrom, rowTo]
+    private RowBatch<ValuesBatch> convertValuesBatch(final Sheet sheet,
+                                                     final ColumnPlan plan,
+                                                     final int rowFrom,
+                                                     final int rowTo,
+                                                     final TableMetrics metrics) throws RuntimeException {
+        String indexRangeString = "[%d, %d]".formatted(rowFrom, rowTo);
+        logInfo("Подготовка порции данных %s для записи в БД.".formatted(indexRangeString));
+        // формирование строки значений полей
+        Optional<ValuesBatch> fieldValues = metrics.recordEncode(
+                () -> bookReader.toPostgresValuesBatch(sheet, plan, rowFrom, rowTo));
+
+        if (fieldValues.isEmpty())
+            throw new RuntimeException("Не удалось сформировать список значений полей данных из диапазона строк %s.".formatted(indexRangeString));
+
+        return new RowBatch<>(rowFrom, rowTo, fieldValues.get());
+    }
 
-            if (fieldValues.isEmpty())
-                throw new RuntimeException("Не удалось сформировать список значений полей данных из диапазона строк %s.".formatted(indexRangeString));
+    // Параллельное преобразование допускается только при чтении сохраненных результатов формул:
+    // вычисление формулы записывает результат в общие объекты ячеек XSSF, которые не потокобезопасны
+    private int getConversionParallelism() {
+        if (conversionParallelism > 1 && ExcelBookReader.FormulaStrategy.CACHED_VALUE != bookReader.getFormulaStrategy()) {
+            logInfo("Параллельное преобразование строк отключено: требуется стратегия формул CACHED_VALUE (задана %s)"
+                    .formatted(bookReader.getFormulaStrategy()));
+            return 1;
+        }
+        return conversionParallelism;
+    }
 
-            logInfo("Запись порции данных %s в БД".formatted(indexRangeString));
-            // заполнение таблицы
-            if (!queryService.insertData(fieldNames, fieldValues.get())) {
-                throw new RuntimeException("Не удалось записать порцию данных %s в БД".formatted(indexRangeString));
-            }
+    // Отметки о записанных строках требуют записи порций в порядке строк листа
+    private boolean isConversionOrdered() {
+        return orderedConversion || checkpointed;
+    }
 
-            rowFrom += rowsPerBatch;
+    private void insertBatch(final PostgresQueryService queryService,
+                             final String fieldNames,
+                             final RowBatch<ValuesBatch> batch) throws RuntimeException {
+        String indexRangeString = batch.getIndexRangeString();
+        logInfo("Запись порции данных %s в БД".formatted(indexRangeString));
+        // заполнение таблицы
+        if (!queryService.insertData(fieldNames, batch.getData().getValues())) {
+            throw new RuntimeException("Не удалось записать порцию данных %s в БД".formatted(indexRangeString));
         }
+    }
 
-        logInfo("Данные успешно записаны в БД");
+    // Карантин строк для записи INSERT ... VALUES (null, если режим не включен)
+    @Nullable
+    RowQuarantine createQuarantine(final PostgresQueryService queryService,
+                                           final QueryPropertyHolder holder,
+                                           final ColumnPlan plan) {
+        if (!errorTolerant)
+            return null;
+        return new RowQuarantine(queryService, queryService.forTable(holder.getDbTableName()),
+                plan.getFieldNames(), holder.getSheetName());
     }
 
-    private Optional<String> toFieldValues(Sheet sheet,
-                                           Map<String, String> postgresTypes,
-                                           QueryPropertyHolder holder,
-                                           int rowFromIndex,
-                                           int rowToIndex) {
-        // типы полей
-        List<String> fieldTypes = PostgresQueryService.toFieldTypes(postgresTypes);
-        // значения полей
-        QueryPropertyHolder.DataColumnInfo columnInfo = holder.getDataColumnInfo().orElse(null);
-        return bookReader.toPostgresTableValues(
-                sheet,
-                fieldTypes,
-                rowFromIndex,
-                Optional.of(rowToIndex),
-                Objects.nonNull(columnInfo) ? Optional.of(columnInfo.getFrom()) : Optional.empty(),
-                Objects.nonNull(columnInfo) ? Optional.of(columnInfo.getTo()) : Optional.empty()
+    // Запись порции с карантином: возвращает количество строк, отклоненных БД
+    int insertBatch(final RowQuarantine quarantine,
+                            final int[] rowIndexes,
+                            final String values,
+                            final RowQuarantine.RangeValues rangeValues,
+                            final TableMetrics metrics) throws RuntimeException {
+        String indexRangeString = "[%d, %d]".formatted(rowIndexes[0], rowIndexes[rowIndexes.length - 1]);
+        logInfo("Запись порции данных %s в БД".formatted(indexRangeString));
+        int rejected = quarantine.insert(rowIndexes, values, rangeValues);
+        if (rejected > 0) {
+            metrics.addRejectedRows(rejected);
+            logInfo("Строк порции %s отклонено БД и сохранено в таблицу %s: %d"
+                    .formatted(indexRangeString, PostgresQueryService.REJECT_TABLE, rejected));
+        }
+        return rejected;
+    }
+
+    // Последняя строка со значениями в колонках плана (по индексу листа): оформленные, но пустые строки в конце листа
+    // не записываются; внутри данных пустые строки сохраняются, отсутствующие строки пропускаются
+    private int getLastDataRow(final Sheet sheet, final QueryPropertyHolder holder, final ColumnPlan plan) {
+        int lastRow = Math.min(
+                holder.getLastDataRow().orElse(sheet.getLastRowNum()),
+                sheet.getLastRowNum()
         );
+        return DataExtentAnalyzer.findLastDataRow(bookReader.getSheetIndex(sheet), holder.getFirstDataRow(), lastRow, plan);
+    }
+
+    // Построчная передача типизированных значений листа в БД (COPY, подготовленный INSERT или разностная запись)
+    private void writeRows(final PostgresQueryService queryService,
+                           final Sheet sheet,
+                           final QueryPropertyHolder holder,
+                           final ColumnPlan plan,
+                           final InsertMode mode,
+                           final BatchCommitter committer,
+                           final TableMetrics metrics,
+                           final BatchSizer batchSizer) throws RuntimeException {
+        logInfo("Передача данных в БД (%s)".formatted(mode));
+        try (PostgresRowWriter rowWriter = openRowWriter(queryService, holder.getDbTableName(), plan, mode, batchSizer)) {
+            this.<RowBatch<List<Object[]>>>runBatches(
+                    sink -> prepareRowBatches(sheet, holder, plan, committer.getStartRow(), metrics, batchSizer, sink),
+                    batch -> {
+                        long bytesSent = rowWriter.getBytesSent();
+                        long started = System.nanoTime();
+                        try {
+                            writeRowBatch(rowWriter, batch, mode, batchSizer.isAdaptive());
+                        } catch (RuntimeException e) {
+                            metrics.batchFailed();
+                            throw e;
+                        }
+                        long writeNanos = System.nanoTime() - started;
+                        metrics.recordWrite(writeNanos);
+                        committer.commit(rowWriter, batch.getRowTo());
+
+                        long bytes = rowWriter.getBytesSent() - bytesSent;
+                        metrics.addRows(batch.getData().size());
+                        metrics.addBytes(bytes);
+                        batchSizer.onBatchWritten(batch.getData().size(), bytes, writeNanos);
+                    }
+            );
+            long bytesSent = rowWriter.getBytesSent();
+            logWriteResult(rowWriter, rowWriter.finish());
+            // остаток буфера COPY передается при завершении записи
+            metrics.addBytes(rowWriter.getBytesSent() - bytesSent);
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось записать данные в БД (%s)".formatted(mode), e);
+        }
+    }
+
+    // Формирует типизированные значения полей порциями (размер порции задает batchSizer)
+    private void prepareRowBatches(final Sheet sheet,
+                                   final QueryPropertyHolder holder,
+                                   final ColumnPlan plan,
+                                   final int startRow,
+                                   final TableMetrics metrics,
+                                   final BatchSizer batchSizer,
+                                   final Consumer<RowBatch<List<Object[]>>> sink) throws RuntimeException {
+        int lastDataRow = getLastDataRow(sheet, holder, plan);
+        int conversionThreads = getConversionParallelism();
+        if (conversionThreads > 1) {
+            new ParallelBatchConverter(conversionThreads, isConversionOrdered()).convert(
+                    startRow, lastDataRow, batchSizer::getBatchRows,
+                    (batchFrom, batchTo) -> convertRowBatch(sheet, plan, batchFrom, batchTo, metrics),
+                    sink);
+            return;
+        }
+
+        int rowFrom = startRow;
+        var rows = new ArrayList<Object[]>(batchSizer.getBatchRows());
+        // время подготовки строк текущей порции (без ожидания этапа записи)
+        long encodeNanos = 0;
+        for (int i = rowFrom; i <= lastDataRow; i++) {
+            Row row = sheet.getRow(i);
+            // отсутствующая строка (пропуск в данных листа) не записывается
+            if (Objects.isNull(row))
+                continue;
+
+            long started = System.nanoTime();
+            rows.add(bookReader.toPostgresRowObjects(row, plan));
+            encodeNanos += System.nanoTime() - started;
+            if (rows.size() >= batchSizer.getBatchRows()) {
+                metrics.recordEncode(encodeNanos);
+                encodeNanos = 0;
+                sink.accept(new RowBatch<>(rowFrom, i, rows));
+                rows = new ArrayList<>(batchSizer.getBatchRows());
+                rowFrom = i + 1;
+            }
+        }
+        if (!rows.isEmpty()) {
+            metrics.recordEncode(encodeNanos);
+            sink.accept(new RowBatch<>(rowFrom, lastDataRow, rows));
+        }
+    }
+
+    // Формирует типизированные значения полей диапазона строк [rowFrom, rowTo]
+    private RowBatch<List<Object[]>> convertRowBatch(final Sheet sheet,
+                                                     final ColumnPlan plan,
+                                                     final int rowFrom,
+                                                     final int rowTo,
+                                                     final TableMetrics metrics) {
+        // отсутствующие строки пропускаются построчно, как и при последовательном преобразовании
+        List<Object[]> rows = metrics.recordEncode(() -> bookReader.toPostgresRowObjects(sheet, plan, rowFrom, rowTo));
+        return new RowBatch<>(rowFrom, rowTo, rows);
+    }
+
+    private void writeRowBatch(final PostgresRowWriter rowWriter,
+                               final RowBatch<List<Object[]>> batch,
+                               final InsertMode mode,
+                               final boolean flush) throws RuntimeException {
+        try {
+            for (Object[] values : batch.getData())
+                rowWriter.writeRow(values);
+            if (flush)
+                rowWriter.flush();
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось записать порцию данных %s в БД (%s)"
+                    .formatted(batch.getIndexRangeString(), mode), e);
+        }
+        logInfo("Передано в БД строк: %d".formatted(rowWriter.getRowCount()));
     }
 
     private Map<String, String> getPostgresTypes(Sheet sheet, QueryPropertyHolder holder) {
@@ -161,25 +735,68 @@ public class DatabaseWriter {
 
     @NoArgsConstructor(access = AccessLevel.PRIVATE)
     public static class DatabaseWriterBuilder {
-        @NonNull
         private Connection connection;
-        @NonNull
+        private DataSource dataSource;
         private ExcelBookReader bookReader;
+        private StreamingBookReader streamingReader;
         private String schemeName = "public";
         private boolean overwrite = true;
         private ComponentLog logger;
         private int rowsPerBatch = 1000;
+        private InsertMode insertMode = InsertMode.VALUES;
+        private Map<String, InsertMode> tableInsertModes = new HashMap<>();
+        private boolean pipelined = false;
+        private int pipelineQueueDepth = 4;
+        private int parallelism = 1;
+        private LoadStrategy loadStrategy = LoadStrategy.DIRECT;
+        private Map<String, List<String>> tableKeyColumns = new HashMap<>();
+        private boolean checkpointed = false;
+        private TransactionPolicy transactionPolicy = TransactionPolicy.NONE;
+        private int commitInterval = 10;
+        private boolean synchronousCommit = true;
+        // реестр Spring Boot входит в глобальный реестр, поэтому метрики видны через Actuator
+        private MeterRegistry meterRegistry = Metrics.globalRegistry;
+        private boolean adaptiveBatching = false;
+        private long targetBatchBytes = 4 * 1024 * 1024;
+        private int minRowsPerBatch = 100;
+        private int maxRowsPerBatch = 50_000;
+        private Duration targetBatchLatency = Duration.ofMillis(500);
+        private boolean fanOut = false;
+        private int emptyRowLimit = 100;
+        private int conversionParallelism = 1;
+        private boolean orderedConversion = true;
+        private boolean errorTolerant = false;
+        private boolean widenColumnsToText = false;
 
         public DatabaseWriterBuilder connection(@NonNull Connection connection) {
             this.connection = connection;
             return this;
         }
 
+        // Пул соединений: используется, если соединение не задано явно; необходим для параллельной записи
+        public DatabaseWriterBuilder dataSource(@NonNull DataSource dataSource) {
+            this.dataSource = dataSource;
+            return this;
+        }
+
         public DatabaseWriterBuilder bookReader(@NonNull ExcelBookReader bookReader) {
             this.bookReader = bookReader;
             return this;
         }
 
+        // Потоковый режим чтения: используется вместо bookReader для больших книг
+        public DatabaseWriterBuilder streamingReader(@NonNull StreamingBookReader streamingReader) {
+            this.streamingReader = streamingReader;
+            return this;
+        }
+
+        // Книга, открытая MemoryGovernor в выбранном по ее оценке режиме
+        public DatabaseWriterBuilder book(@NonNull MemoryGovernor.Lease lease) {
+            lease.getBookReader().ifPresent(this::bookReader);
+            lease.getStreamingReader().ifPresent(this::streamingReader);
+            return this;
+        }
+
         public DatabaseWriterBuilder schemeName(String schemeName) {
             if (!schemeName.isBlank())
                 this.schemeName = schemeName.toLowerCase();
@@ -202,8 +819,166 @@ public class DatabaseWriter {
             return this;
         }
 
+        public DatabaseWriterBuilder insertMode(@NonNull InsertMode insertMode) {
+            this.insertMode = insertMode;
+            return this;
+        }
+
+        // Способ записи для отдельной таблицы (переопределяет insertMode)
+        public DatabaseWriterBuilder insertMode(@NonNull String tableName, @NonNull InsertMode insertMode) {
+            this.tableInsertModes.put(tableName, insertMode);
+            return this;
+        }
+
+        // Конвейерный режим: порции данных формируются в отдельном потоке, пока предыдущие записываются в БД
+        public DatabaseWriterBuilder pipelined(boolean pipelined) {
+            this.pipelined = pipelined;
+            return this;
+        }
+
+        // Максимальное количество подготовленных порций данных, ожидающих записи в БД
+        public DatabaseWriterBuilder pipelineQueueDepth(int pipelineQueueDepth) {
+            if (pipelineQueueDepth > 0)
+                this.pipelineQueueDepth = pipelineQueueDepth;
+            return this;
+        }
+
+        // Количество таблиц, записываемых одновременно (каждая через свое соединение из dataSource)
+        public DatabaseWriterBuilder parallelism(int parallelism) {
+            this.parallelism = Math.max(1, parallelism);
+            return this;
+        }
+
+        // Стратегия загрузки; при STAGING и overwrite у целевой таблицы не должно быть зависящих представлений,
+        // внешних ключей и триггеров (они не переносятся на заменяющую таблицу)
+        public DatabaseWriterBuilder loadStrategy(@NonNull LoadStrategy loadStrategy) {
+            this.loadStrategy = loadStrategy;
+            return this;
+        }
+
+        // Ключевые поля таблицы для разностной загрузки: по ним строки сопоставляются и изменяются на месте
+        public DatabaseWriterBuilder deltaKeyColumns(@NonNull String tableName, @NonNull List<String> keyColumns) {
+            this.tableKeyColumns.put(tableName, List.copyOf(keyColumns));
+            return this;
+        }
+
+        // Отметки о записанных порциях (таблица excel_load_progress): повторный запуск с той же книгой
+        // после сбоя продолжает запись с первой незаписанной строки. Применяется только к стратегии DIRECT
+        public DatabaseWriterBuilder checkpointed(boolean checkpointed) {
+            this.checkpointed = checkpointed;
+            return this;
+        }
+
+        // Политика транзакций записи; при сбое незафиксированные порции откатываются
+        public DatabaseWriterBuilder transactionPolicy(@NonNull TransactionPolicy transactionPolicy) {
+            this.transactionPolicy = transactionPolicy;
+            return this;
+        }
+
+        // Количество порций в одной транзакции для политики EVERY_N_BATCHES
+        public DatabaseWriterBuilder commitInterval(int commitInterval) {
+            this.commitInterval = Math.max(1, commitInterval);
+            return this;
+        }
+
+        // false - отключение synchronous_commit для сеанса на время записи: фиксация не ждет записи WAL на диск,
+        // при сбое сервера могут быть потеряны последние зафиксированные транзакции (целостность данных сохраняется)
+        public DatabaseWriterBuilder synchronousCommit(boolean synchronousCommit) {
+            this.synchronousCommit = synchronousCommit;
+            return this;
+        }
+
+        // Реестр метрик записи таблиц (по умолчанию - глобальный реестр Micrometer)
+        public DatabaseWriterBuilder meterRegistry(@NonNull MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        // Адаптивный размер порций: начальный размер - rowsPerBatch, далее размер подбирается по объему
+        // и времени записи предыдущих порций (в пределах batchRowsRange, не более targetBatchBytes байтов)
+        public DatabaseWriterBuilder adaptiveBatching(boolean adaptiveBatching) {
+            this.adaptiveBatching = adaptiveBatching;
+            return this;
+        }
+
+        // Наибольший объем порции данных в байтах (для адаптивного размера порций)
+        public DatabaseWriterBuilder targetBatchBytes(long targetBatchBytes) {
+            if (targetBatchBytes > 0)
+                this.targetBatchBytes = targetBatchBytes;
+            return this;
+        }
+
+        // Пределы размера порции в строках (для адаптивного размера порций)
+        public DatabaseWriterBuilder batchRowsRange(int minRowsPerBatch, int maxRowsPerBatch) {
+            if (minRowsPerBatch < 1 || maxRowsPerBatch < minRowsPerBatch)
+                throw new RuntimeException("Некорректные пределы размера порции: [%d, %d]".formatted(minRowsPerBatch, maxRowsPerBatch));
+            this.minRowsPerBatch = minRowsPerBatch;
+            this.maxRowsPerBatch = maxRowsPerBatch;
+            return this;
+        }
+
+        // Желаемое время записи одной порции данных (для адаптивного размера порций)
+        public DatabaseWriterBuilder targetBatchLatency(@NonNull Duration targetBatchLatency) {
+            if (!targetBatchLatency.isNegative() && !targetBatchLatency.isZero())
+                this.targetBatchLatency = targetBatchLatency;
+            return this;
+        }
+
+        // Единый проход по листу для всех его таблиц (режим ALL_TABLES_PER_SHEET): строки читаются один раз
+        // и передаются таблицам одновременно. Применяется при потоковом чтении и заданном dataSource
+        public DatabaseWriterBuilder fanOut(boolean fanOut) {
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        // Количество пустых (или отсутствующих) строк подряд, после которого данные листа считаются закончившимися (потоковое чтение).
+        // Если после такого пропуска в листе есть значения, они не записываются, и выводится предупреждение
+        public DatabaseWriterBuilder emptyRowLimit(int emptyRowLimit) {
+            this.emptyRowLimit = Math.max(1, emptyRowLimit);
+            return this;
+        }
+
+        // Количество потоков преобразования строк листа (DOM-модель книги): диапазон строк делится на порции,
+        // которые формируются параллельно. Действует только для книги со стратегией формул CACHED_VALUE
+        // (книга только читается); при вычислении формул строки преобразуются в одном потоке
+        public DatabaseWriterBuilder conversionParallelism(int conversionParallelism) {
+            this.conversionParallelism = Math.max(1, conversionParallelism);
+            return this;
+        }
+
+        // false - порции передаются на запись по мере готовности (при отметках о записанных строках - всегда по порядку)
+        public DatabaseWriterBuilder orderedConversion(boolean orderedConversion) {
+            this.orderedConversion = orderedConversion;
+            return this;
+        }
+
+        // Карантин строк (запись INSERT ... VALUES): порция, отклоненная БД, делится пополам до отдельных строк,
+        // ошибочные строки сохраняются в таблицу excel_rejected_rows схемы, остальные строки записываются
+        public DatabaseWriterBuilder errorTolerant(boolean errorTolerant) {
+            this.errorTolerant = errorTolerant;
+            return this;
+        }
+
+        // Тип TEXT формируется и по пустой ячейке первой строки данных, поэтому приведение полей
+        // существующей таблицы к TEXT выполняется только при явном разрешении
+        public DatabaseWriterBuilder widenColumnsToText(boolean widenColumnsToText) {
+            this.widenColumnsToText = widenColumnsToText;
+            return this;
+        }
+
         public DatabaseWriter build() {
-            return new DatabaseWriter(connection, bookReader, schemeName, overwrite, logger, rowsPerBatch);
+            if (Objects.isNull(connection) && Objects.isNull(dataSource))
+                throw new RuntimeException("Не задано соединение с БД (connection или dataSource)");
+            if (Objects.isNull(bookReader) && Objects.isNull(streamingReader))
+                throw new RuntimeException("Не задан источник данных книги (bookReader или streamingReader)");
+
+            return new DatabaseWriter(connection, dataSource, bookReader, streamingReader, schemeName, overwrite, logger, rowsPerBatch,
+                    insertMode, Map.copyOf(tableInsertModes), pipelined, pipelineQueueDepth,
+                    parallelism, loadStrategy, Map.copyOf(tableKeyColumns), checkpointed, transactionPolicy,
+                    commitInterval, synchronousCommit, meterRegistry, adaptiveBatching, targetBatchBytes,
+                    minRowsPerBatch, maxRowsPerBatch, targetBatchLatency, fanOut, emptyRowLimit,
+                    conversionParallelism, orderedConversion, errorTolerant,
+                    widenColumnsToText);
         }
     }
 }
@@ -0,0 +1,53 @@
+package com.example.excelparser.utils.excel;
+
+import jakarta.annotation.Nullable;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+// Признак формата даты по индексу стиля ячейки (строка формата разбирается один раз)
+class DateFormatCache {
+    private static final byte UNKNOWN = 0;
+    private static final byte DATE = 1;
+    private static final byte NOT_DATE = 2;
+
+    private final IntFunction<? extends CellStyle> styles;
+    // признак формата даты по индексу стиля
+    private final byte[] formats;
+
+    DateFormatCache(int styleCount, IntFunction<? extends CellStyle> styles) {
+        this.styles = styles;
+        formats = new byte[Math.max(0, styleCount)];
+    }
+
+    // Замена DateUtil.isCellDateFormatted для числовой ячейки
+    boolean isDateFormatted(Cell cell) {
+        CellStyle style = cell.getCellStyle();
+        return Objects.nonNull(style)
+                && isDateFormat(Short.toUnsignedInt(style.getIndex()))
+                && DateUtil.isValidExcelDate(cell.getNumericCellValue());
+    }
+
+    boolean isDateFormatted(int styleIndex, double value) {
+        return isDateFormat(styleIndex) && DateUtil.isValidExcelDate(value);
+    }
+
+    boolean isDateFormat(int styleIndex) {
+        if (styleIndex < 0 || styleIndex >= formats.length)
+            return classify(styles.apply(styleIndex));
+
+        byte format = formats[styleIndex];
+        if (UNKNOWN == format) {
+            format = classify(styles.apply(styleIndex)) ? DATE : NOT_DATE;
+            formats[styleIndex] = format;
+        }
+        return DATE == format;
+    }
+
+    private static boolean classify(@Nullable CellStyle style) {
+        return Objects.nonNull(style) && DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+    }
+}
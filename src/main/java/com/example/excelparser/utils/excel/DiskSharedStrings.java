@@ -0,0 +1,190 @@
+package com.example.excelparser.utils.excel;
+
+import jakarta.annotation.Nullable;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// Таблица общих строк книги во временном файле (в памяти - смещения строк и LRU-кэш)
+public class DiskSharedStrings implements SharedStrings, Closeable {
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<Integer, String> cache;
+    // смещение строки i в файле: offsets[i], длина: offsets[i + 1] - offsets[i]
+    private long[] offsets = new long[1024];
+    private int uniqueCount;
+    private int count;
+
+    public DiskSharedStrings(@Nullable InputStream sharedStringsStream, int cacheSize) throws IOException {
+        file = Files.createTempFile("excel-parser-sst-", ".bin");
+        try {
+            try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(file))) {
+                if (Objects.nonNull(sharedStringsStream))
+                    parse(sharedStringsStream, output);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        cache = new LinkedHashMap<>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    // Пустая таблица (в книге нет общих строк)
+    public DiskSharedStrings() throws IOException {
+        this(null, 0);
+    }
+
+    @Override
+    public RichTextString getItemAt(int idx) {
+        return new XSSFRichTextString(getString(idx));
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public int getUniqueCount() {
+        return uniqueCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    private String getString(int idx) {
+        if (idx < 0 || idx >= uniqueCount)
+            throw new IndexOutOfBoundsException("Индекс общей строки вне диапазона: " + idx);
+
+        synchronized (cache) {
+            String cached = cache.get(idx);
+            if (cached != null)
+                return cached;
+        }
+
+        String value = readString(offsets[idx], (int) (offsets[idx + 1] - offsets[idx]));
+        synchronized (cache) {
+            cache.put(idx, value);
+        }
+        return value;
+    }
+
+    private String readString(long position, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            // позиционное чтение не меняет состояние канала и безопасно при параллельном доступе
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0)
+                    throw new IOException("Неожиданный конец файла общих строк");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    private void parse(InputStream sharedStringsStream, OutputStream output) throws IOException {
+        try {
+            XMLReader xmlReader = XMLHelper.newXMLReader();
+            xmlReader.setContentHandler(new SharedStringsHandler(output));
+            xmlReader.parse(new InputSource(sharedStringsStream));
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Ошибка чтения таблицы общих строк", e);
+        }
+    }
+
+    private void addString(OutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.write(bytes);
+
+        if (uniqueCount + 1 >= offsets.length)
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        offsets[uniqueCount + 1] = offsets[uniqueCount] + bytes.length;
+        uniqueCount++;
+    }
+
+    // Разбор XML таблицы общих строк: <sst count="2"><si><t>a</t></si><si><r><t>b</t></r></si></sst>
+    private class SharedStringsHandler extends DefaultHandler {
+        private final OutputStream output;
+        private final StringBuilder value = new StringBuilder();
+        private boolean collecting;
+        // текст фонетических подсказок (rPh) не входит в значение строки
+        private boolean phonetic;
+
+        private SharedStringsHandler(OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName.isEmpty() ? qName : localName) {
+                case "sst" -> {
+                    String countValue = attributes.getValue("count");
+                    count = (countValue != null) ? Integer.parseInt(countValue) : 0;
+                }
+                case "si" -> value.setLength(0);
+                case "rPh" -> phonetic = true;
+                case "t" -> collecting = !phonetic;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting)
+                value.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName.isEmpty() ? qName : localName) {
+                case "t" -> collecting = false;
+                case "rPh" -> phonetic = false;
+                case "si" -> {
+                    try {
+                        addString(output, value.toString());
+                    } catch (IOException e) {
+                        throw new SAXException(e);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+    }
+}
@@ -1,33 +1,156 @@
 package com.example.excelparser.utils.excel;
 
+import com.example.excelparser.utils.database.PostgresType;
+import com.example.excelparser.utils.database.PostgresValuesEncoder;
 import com.ibm.icu.text.Transliterator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import jakarta.annotation.Nullable;
 import lombok.Getter;
 import lombok.NonNull;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.temporal.ChronoUnit;
 import java.time.temporal.ValueRange;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
-public class ExcelBookReader {
+public class ExcelBookReader implements Closeable {
     private static final Transliterator TRANSLITERATOR = Transliterator.getInstance("Russian-Latin/BGN");
+    private static final int VALUES_BUFFER_CAPACITY = 64 * 1024;
     @Getter
     private final XSSFWorkbook workbook;
-    private final FormulaEvaluator formulaEvaluator;
-
-    {
-        IOUtils.setByteArrayMaxOverride(1000000000);
+    // вычислитель формул не потокобезопасен, поэтому у каждого потока свой экземпляр
+    private final ThreadLocal<FormulaEvaluator> formulaEvaluator;
+    @Getter
+    private final FormulaStrategy formulaStrategy;
+    // признак формата даты по индексу стиля ячейки
+    private final DateFormatCache dateFormats;
+    // ячейки с формулами, уже вычисленными при чтении книги (результат сохранен в ячейке):
+    // индекс листа -> индекс строки -> колонки вычисленных ячеек строки
+    private final Map<Integer, Map<Integer, BitSet>> evaluatedCells = new ConcurrentHashMap<>();
+    // индексы непустых ячеек листов (имя листа -> индекс), строятся при первом обращении
+    private final Map<String, SheetIndex> sheetIndexes = new ConcurrentHashMap<>();
+    // буфер строки значений порции, переиспользуемый потоком обработки от порции к порции
+    private final ThreadLocal<PostgresValuesEncoder> valuesEncoder =
+            ThreadLocal.withInitial(() -> new PostgresValuesEncoder(VALUES_BUFFER_CAPACITY));
+    // временный файл, в который был сохранен входной поток (удаляется при закрытии)
+    private final Path tempFile;
+    private final Path path;
+    private String fileHash;
+    private final Counter formulaEvaluations;
+
+    public enum FormulaStrategy {
+        // используется только сохраненный в файле результат формулы
+        CACHED_VALUE,
+        // формула вычисляется, только если сохраненный результат отсутствует
+        EVALUATE_IF_MISSING,
+        // формула вычисляется (не более одного раза за время работы с книгой)
+        ALWAYS_EVALUATE
     }
 
     public ExcelBookReader(InputStream inputStream) throws IOException {
-        workbook = new XSSFWorkbook(inputStream);
-        formulaEvaluator = workbook.getCreationHelper().createFormulaEvaluator();
+        this(inputStream, FormulaStrategy.ALWAYS_EVALUATE);
+    }
+
+    // Входной поток сохраняется во временный файл, архив книги читается с диска
+    public ExcelBookReader(InputStream inputStream, @NonNull FormulaStrategy formulaStrategy) throws IOException {
+        this(BookFiles.spoolToTempFile(inputStream), true, formulaStrategy, Metrics.globalRegistry);
+    }
+
+    public ExcelBookReader(InputStream inputStream,
+                           @NonNull FormulaStrategy formulaStrategy,
+                           @NonNull MeterRegistry meterRegistry) throws IOException {
+        this(BookFiles.spoolToTempFile(inputStream), true, formulaStrategy, meterRegistry);
+    }
+
+    public ExcelBookReader(File file) throws IOException {
+        this(file.toPath(), false, FormulaStrategy.ALWAYS_EVALUATE, Metrics.globalRegistry);
+    }
+
+    public ExcelBookReader(File file, @NonNull FormulaStrategy formulaStrategy) throws IOException {
+        this(file.toPath(), false, formulaStrategy, Metrics.globalRegistry);
+    }
+
+    public ExcelBookReader(Path path) throws IOException {
+        this(path, false, FormulaStrategy.ALWAYS_EVALUATE, Metrics.globalRegistry);
+    }
+
+    public ExcelBookReader(Path path, @NonNull FormulaStrategy formulaStrategy) throws IOException {
+        this(path, false, formulaStrategy, Metrics.globalRegistry);
+    }
+
+    // Метрики открытия книги и вычисления формул публикуются в meterRegistry с тегом книги
+    public ExcelBookReader(Path path,
+                           @NonNull FormulaStrategy formulaStrategy,
+                           @NonNull MeterRegistry meterRegistry) throws IOException {
+        this(path, false, formulaStrategy, meterRegistry);
+    }
+
+    private ExcelBookReader(Path path,
+                            boolean temporary,
+                            FormulaStrategy formulaStrategy,
+                            MeterRegistry meterRegistry) throws IOException {
+        this.path = path;
+        tempFile = temporary ? path : null;
+        long started = System.nanoTime();
+        OPCPackage opcPackage = null;
+        try {
+            // архив открывается только для чтения с произвольным доступом к частям на диске
+            opcPackage = OPCPackage.open(path.toFile(), PackageAccess.READ);
+            workbook = new XSSFWorkbook(opcPackage);
+        } catch (InvalidFormatException | IOException e) {
+            if (Objects.nonNull(opcPackage))
+                opcPackage.revert();
+            deleteTempFile();
+            throw (e instanceof IOException ioException)
+                    ? ioException
+                    : new IOException("Не удалось открыть книгу", e);
+        }
+        formulaEvaluator = ThreadLocal.withInitial(() -> workbook.getCreationHelper().createFormulaEvaluator());
+        dateFormats = new DateFormatCache(workbook.getNumCellStyles(), workbook::getCellStyleAt);
+        this.formulaStrategy = formulaStrategy;
+        String book = BookFiles.getBookTag(path, temporary);
+        formulaEvaluations = meterRegistry.counter("excel.formula.evaluations", "book", book);
+        meterRegistry.timer("excel.workbook.open", "reader", "dom", "book", book)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private void deleteTempFile() throws IOException {
+        if (Objects.nonNull(tempFile))
+            Files.deleteIfExists(tempFile);
+    }
+
+    // Хэш содержимого файла книги (вычисляется при первом обращении)
+    public synchronized String getFileHash() throws IOException {
+        if (Objects.isNull(fileHash))
+            fileHash = BookFiles.sha256(path);
+        return fileHash;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // пакет открыт только для чтения, поэтому изменения не сохраняются
+        workbook.close();
+        deleteTempFile();
+    }
+
+    // Индекс непустых ячеек листа (лист просматривается один раз, индекс используется повторно)
+    public SheetIndex getSheetIndex(@NonNull Sheet sheet) {
+        return sheetIndexes.computeIfAbsent(sheet.getSheetName(), name -> SheetIndex.of(sheet));
     }
 
     public Optional<String> getFirstSheetName() {
@@ -120,14 +243,14 @@ public class ExcelBookReader {
         return result;
     }
 
-    private String toPostgresType(Cell cell) {
+    String toPostgresType(Cell cell) {
         CellType cellType = (CellType.FORMULA == cell.getCellType())
-                ? formulaEvaluator.evaluateFormulaCell(cell)
+                ? getFormulaResultType(cell)
                 : cell.getCellType();
 
         switch (cellType) {
             case NUMERIC -> {
-                return DateUtil.isCellDateFormatted(cell) ? "TIMESTAMP" : "DOUBLE PRECISION";
+                return dateFormats.isDateFormatted(cell) ? "TIMESTAMP" : "DOUBLE PRECISION";
             }
             case BOOLEAN -> {
                 return "BOOLEAN";
@@ -144,81 +267,182 @@ public class ExcelBookReader {
                                                   Optional<Integer> rowToIndex,
                                                   Optional<Integer> columnFromIndex,
                                                   Optional<Integer> columnToIndex) {
-        if (rowFromIndex > sheet.getLastRowNum())
-            return Optional.empty();
+        // если индексы колонок не заданы, берем диапазон списка имен полей
+        int columnNumFrom = columnFromIndex.orElse(0);
+        int columnNumTo = columnToIndex.orElseGet(() -> fieldTypes.size() - 1);
 
-        var result = new ArrayList<String>();
+        // проверка индексов колонок
+        if (!checkColumnIndexesValid(columnNumFrom, columnNumTo, fieldTypes.size()))
+            return Optional.empty();
 
         // если индекс конечной строки не задан, берем индекс последней строки данных
         int rowToIndexValue = rowToIndex.orElseGet(() -> sheet.getLastRowNum());
-        // индекс последней строки не должен выходить за пределы данных листа
-        rowToIndexValue = Math.min(rowToIndexValue, sheet.getLastRowNum());
+        return toPostgresTableValues(
+                sheet,
+                ColumnPlan.compile(fieldTypes, columnNumFrom, columnNumTo),
+                rowFromIndex,
+                rowToIndexValue
+        );
+    }
 
-        // проверка индексов строк
-        if (!checkRowIndexValid(sheet, rowFromIndex) || !checkRowIndexValid(sheet, rowToIndexValue))
+    // Формирует строку значений полей диапазона строк по скомпилированному плану колонок
+    public Optional<String> toPostgresTableValues(Sheet sheet,
+                                                  ColumnPlan plan,
+                                                  int rowFromIndex,
+                                                  int rowToIndex) {
+        return toPostgresValuesBatch(sheet, plan, rowFromIndex, rowToIndex).map(ValuesBatch::getValues);
+    }
+
+    // Формирует порцию строк значений полей диапазона строк с индексами строк листа и границами строк в тексте
+    public Optional<ValuesBatch> toPostgresValuesBatch(Sheet sheet,
+                                                       ColumnPlan plan,
+                                                       int rowFromIndex,
+                                                       int rowToIndex) {
+        if (rowFromIndex > sheet.getLastRowNum())
             return Optional.empty();
 
-        // если индексы колонок не заданы, берем диапазон списка имен полей
-        int columnNumFrom = columnFromIndex.orElse(0);
-        int columnNumTo = columnToIndex.orElseGet(() -> fieldTypes.size() - 1);
+        // индекс последней строки не должен выходить за пределы данных листа
+        int rowToIndexValue = Math.min(rowToIndex, sheet.getLastRowNum());
 
-        // проверка индексов колонок
-        if (!checkColumnIndexesValid(columnNumFrom, columnNumTo, fieldTypes.size()))
+        // проверка индексов строк
+        if (!checkRowIndexValid(sheet, rowFromIndex) || !checkRowIndexValid(sheet, rowToIndexValue))
             return Optional.empty();
 
+        PostgresValuesEncoder encoder = valuesEncoder.get();
+        encoder.reset();
+        int[] rowIndexes = new int[Math.max(0, rowToIndexValue - rowFromIndex + 1)];
         for (int i = rowFromIndex; i <= rowToIndexValue; i++) {
             Row row = sheet.getRow(i);
-            // если строка null, то достигнут конец данных
+            // отсутствующая строка (пропуск в данных листа) не записывается
             if (Objects.isNull(row))
-                break;
+                continue;
 
-            String rowValues = toPostgresRowValues(sheet.getRow(i), fieldTypes, columnNumFrom, columnNumTo);
-            result.add(rowValues);
+            rowIndexes[encoder.getRowCount()] = i;
+            appendRowValues(encoder, row, plan);
         }
-        return Optional.of(String.join(", ", result));
+        return Optional.of(new ValuesBatch(
+                encoder.build(),
+                Arrays.copyOf(rowIndexes, encoder.getRowCount()),
+                encoder.getRowBounds()
+        ));
     }
 
-    private String toPostgresRowValues(@NonNull Row row,
-                                       List<String> fieldTypes,
-                                       int columnFromIndex,
-                                       int columnToIndex) {
-        var values = new ArrayList<String>();
+    String toPostgresRowValues(@NonNull Row row,
+                               List<String> fieldTypes,
+                               int columnFromIndex,
+                               int columnToIndex) {
+        return toPostgresRowValues(row, ColumnPlan.compile(fieldTypes, columnFromIndex, columnToIndex));
+    }
 
-        for (int i = 0; i < fieldTypes.size(); i++) {
-            // берем значение ячейки, смщенное на columnFromIndex относительно начальной колонки
-            int cellIndex = columnFromIndex + i;
-            // формируем данные до columnToIndex
-            if (cellIndex > columnToIndex)
-                break;
+    String toPostgresRowValues(@NonNull Row row, ColumnPlan plan) {
+        PostgresValuesEncoder encoder = valuesEncoder.get();
+        encoder.reset();
+        appendRowValues(encoder, row, plan);
+        return encoder.build();
+    }
+
+    // Дописывает значения полей строки в буфер порции
+    void appendRowValues(PostgresValuesEncoder encoder, Row row, ColumnPlan plan) {
+        encoder.beginRow();
+        for (int i = 0; i < plan.size(); i++) {
+            Cell cell = row.getCell(plan.getColumnIndex(i), Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
+            if (Objects.isNull(cell))
+                encoder.appendNull();
+            else
+                appendValue(encoder, cell, plan.getColumnType(i));
+        }
+        encoder.endRow();
+    }
+
+    // Формирует типизированные значения полей диапазона строк; отсутствующие строки (пропуски в данных листа) пропускаются
+    public List<Object[]> toPostgresRowObjects(Sheet sheet, ColumnPlan plan, int rowFromIndex, int rowToIndex) {
+        var rows = new ArrayList<Object[]>(Math.max(0, rowToIndex - rowFromIndex + 1));
+        for (int i = rowFromIndex; i <= rowToIndex; i++) {
+            Row row = sheet.getRow(i);
+            if (Objects.nonNull(row))
+                rows.add(toPostgresRowObjects(row, plan));
+        }
+        return rows;
+    }
 
-            Cell cell = row.getCell(cellIndex, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
-            values.add(Objects.isNull(cell) ? "null" : toPostgresString(cell, fieldTypes.get(i)));
+    // Формирует типизированные значения полей строки (Double, LocalDateTime, Boolean, String или null)
+    public Object[] toPostgresRowObjects(@NonNull Row row,
+                                         List<String> fieldTypes,
+                                         int columnFromIndex,
+                                         int columnToIndex) {
+        return toPostgresRowObjects(row, ColumnPlan.compile(fieldTypes, columnFromIndex, columnToIndex));
+    }
+
+    public Object[] toPostgresRowObjects(@NonNull Row row, ColumnPlan plan) {
+        var values = new Object[plan.size()];
+
+        for (int i = 0; i < values.length; i++) {
+            Cell cell = row.getCell(plan.getColumnIndex(i), Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
+            values[i] = Objects.isNull(cell) ? null : toObject(cell, plan.getColumnType(i));
+        }
+        return values;
+    }
+
+    // Значение ячейки по тем же правилам, что и toObject, но без промежуточных объектов
+    private void appendValue(PostgresValuesEncoder encoder, Cell cell, PostgresType columnType) {
+        switch (cell.getCellType()) {
+            case NUMERIC -> appendNumericValue(encoder, cell, columnType);
+            case BOOLEAN -> {
+                if (PostgresType.BOOLEAN == columnType)
+                    encoder.appendBoolean(cell.getBooleanCellValue());
+                else
+                    encoder.appendNull();
+            }
+            case FORMULA -> {
+                switch (getFormulaResultType(cell)) {
+                    case NUMERIC -> appendNumericValue(encoder, cell, columnType);
+                    case STRING -> encoder.appendText(cell.getStringCellValue());
+                    case BOOLEAN -> encoder.appendBoolean(cell.getBooleanCellValue());
+                    default -> encoder.appendNull();
+                }
+            }
+            case STRING -> {
+                if (PostgresType.TEXT == columnType)
+                    encoder.appendText(cell.getStringCellValue());
+                else
+                    encoder.appendNull();
+            }
+            default -> encoder.appendNull();
         }
-        return values.stream().collect(Collectors.joining(", ", "(", ")"));
     }
 
-    private String toPostgresString(Cell cell, String fieldType) {
-        return Optional.ofNullable(toValue(cell, fieldType))
-                .map(value -> "'%s'".formatted(value))
-                .orElse("null");
+    private void appendNumericValue(PostgresValuesEncoder encoder, Cell cell, PostgresType columnType) {
+        // дата
+        if (dateFormats.isDateFormatted(cell)) {
+            if (PostgresType.TIMESTAMP == columnType)
+                encoder.appendDate(cell.getLocalDateTimeCellValue());
+            else
+                encoder.appendNull();
+            return;
+        }
+        // число
+        if (PostgresType.DOUBLE_PRECISION == columnType)
+            encoder.appendDouble(cell.getNumericCellValue());
+        else
+            encoder.appendNull();
     }
 
-    private String toValue(Cell cell, String fieldType) {
+    @Nullable
+    private Object toObject(Cell cell, PostgresType columnType) {
         switch (cell.getCellType()) {
             case NUMERIC -> {
-                return toNumericString(cell, fieldType);
+                return toNumericObject(cell, columnType);
             }
             case BOOLEAN -> {
-                return (fieldType.equals("BOOLEAN"))
-                        ? Boolean.toString(cell.getBooleanCellValue())
+                return (PostgresType.BOOLEAN == columnType)
+                        ? cell.getBooleanCellValue()
                         : null;
             }
             case FORMULA -> {
-                Optional<Object> value = evaluateFormula(cell, fieldType);
-                return value.map(String::valueOf).orElse(null);
+                return toFormulaObject(cell, columnType);
             }
             case STRING -> {
-                return (fieldType.equals("TEXT"))
+                return (PostgresType.TEXT == columnType)
                         ? cell.getStringCellValue()
                         : null;
             }
@@ -229,38 +453,82 @@ public class ExcelBookReader {
     }
 
     @Nullable
-    private String toNumericString(Cell cell, String fieldType) {
+    private Object toNumericObject(Cell cell, PostgresType columnType) {
         // дата
-        if (DateUtil.isCellDateFormatted(cell)) {
-            return (fieldType.equals("TIMESTAMP"))
-                    ? cell.getLocalDateTimeCellValue().format(DateTimeFormatter.ISO_DATE)
+        if (dateFormats.isDateFormatted(cell)) {
+            return (PostgresType.TIMESTAMP == columnType)
+                    ? cell.getLocalDateTimeCellValue().truncatedTo(ChronoUnit.DAYS)
                     : null;
         }
         // число
-        return (fieldType.equals("DOUBLE PRECISION"))
-                ? Double.valueOf(cell.getNumericCellValue()).toString()
+        return (PostgresType.DOUBLE_PRECISION == columnType)
+                ? cell.getNumericCellValue()
                 : null;
     }
 
-    private Optional<Object> evaluateFormula(Cell cell, String fieldType) {
-        CellType cellType = formulaEvaluator.evaluateFormulaCell(cell);
-
-        switch (cellType) {
+    // Значение формулы: строковый и логический результат записываются независимо от типа поля
+    @Nullable
+    private Object toFormulaObject(Cell cell, PostgresType columnType) {
+        switch (getFormulaResultType(cell)) {
             case NUMERIC -> {
-//                return Optional.of(cell.getNumericCellValue());
-                return Optional.ofNullable(toNumericString(cell, fieldType));
-
+                return toNumericObject(cell, columnType);
             }
             case STRING -> {
-                return Optional.ofNullable(cell.getStringCellValue());
+                return cell.getStringCellValue();
             }
             case BOOLEAN -> {
-                return Optional.of(cell.getBooleanCellValue());
+                return cell.getBooleanCellValue();
             }
             default -> {
-                break;
+                return null;
             }
         }
-        return Optional.empty();
+    }
+
+    // Тип результата формулы согласно стратегии; значение затем читается из ячейки
+    private CellType getFormulaResultType(Cell cell) {
+        switch (formulaStrategy) {
+            case CACHED_VALUE -> {
+                // формула без сохраненного результата (файлы, записанные не в Excel) читается как пустое значение
+                return hasCachedFormulaResult(cell)
+                        ? cell.getCachedFormulaResultType()
+                        : CellType.BLANK;
+            }
+            case EVALUATE_IF_MISSING -> {
+                return hasCachedFormulaResult(cell)
+                        ? cell.getCachedFormulaResultType()
+                        : evaluateOnce(cell);
+            }
+            default -> {
+                return evaluateOnce(cell);
+            }
+        }
+    }
+
+    private boolean hasCachedFormulaResult(Cell cell) {
+        return (cell instanceof XSSFCell xssfCell) && xssfCell.getCTCell().isSetV();
+    }
+
+    // Сбрасывает отметки о вычисленных ячейках и кэш вычислителя текущего потока: при следующем чтении
+    // формулы вычисляются заново (используется бенчмарками для повторных замеров)
+    void resetFormulaEvaluation() {
+        evaluatedCells.clear();
+        formulaEvaluator.remove();
+    }
+
+    // Вычисляет формулу при первом обращении к ячейке; результат сохраняется в ячейке
+    private CellType evaluateOnce(Cell cell) {
+        BitSet columns = evaluatedCells
+                .computeIfAbsent(workbook.getSheetIndex(cell.getSheet()), sheetIndex -> new ConcurrentHashMap<>())
+                .computeIfAbsent(cell.getRowIndex(), rowIndex -> new BitSet());
+        synchronized (columns) {
+            if (columns.get(cell.getColumnIndex()))
+                return cell.getCachedFormulaResultType();
+
+            CellType cellType = formulaEvaluator.get().evaluateFormulaCell(cell);
+            columns.set(cell.getColumnIndex());
+            formulaEvaluations.increment();
+            return cellType;
+        }
     }
 }
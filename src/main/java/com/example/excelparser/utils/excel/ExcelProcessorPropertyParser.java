@@ -5,7 +5,9 @@ import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.apache.poi.ss.usermodel.Sheet;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -42,6 +44,48 @@ public class ExcelProcessorPropertyParser {
                 : parseAllTablesPerSheetData();
     }
 
+    // Таблицы листов, найденные по индексу непустых ячеек; заданные имена таблиц БД заменяют предложенные по порядку
+    public List<QueryPropertyHolder> detectQueryPropertyHolders(MemoryGovernor.Lease book) throws IOException {
+        Optional<ExcelBookReader> bookReader = book.getBookReader();
+        return bookReader.isPresent()
+                ? detectQueryPropertyHolders(bookReader.get())
+                : detectQueryPropertyHolders(book.getStreamingReader().orElseThrow());
+    }
+
+    public List<QueryPropertyHolder> detectQueryPropertyHolders(ExcelBookReader bookReader) {
+        var detector = new SheetRegionDetector();
+        var result = new ArrayList<QueryPropertyHolder>();
+        for (String sheetName : sheetNames) {
+            Sheet sheet = bookReader.getWorkbook().getSheet(sheetName);
+            if (Objects.isNull(sheet))
+                throw new RuntimeException("Лист \"%s\" не найден в книге".formatted(sheetName));
+            result.addAll(detector.detect(sheetName, bookReader.getSheetIndex(sheet)));
+        }
+        return renameDetectedTables(result);
+    }
+
+    public List<QueryPropertyHolder> detectQueryPropertyHolders(StreamingBookReader streamingReader) throws IOException {
+        var detector = new SheetRegionDetector();
+        var result = new ArrayList<QueryPropertyHolder>();
+        for (String sheetName : sheetNames) {
+            SheetIndex index = streamingReader.getSheetIndex(sheetName)
+                    .orElseThrow(() -> new RuntimeException("Лист \"%s\" не найден в книге".formatted(sheetName)));
+            result.addAll(detector.detect(sheetName, index));
+        }
+        return renameDetectedTables(result);
+    }
+
+    private List<QueryPropertyHolder> renameDetectedTables(List<QueryPropertyHolder> holders) {
+        var result = new ArrayList<QueryPropertyHolder>();
+        for (int i = 0; i < holders.size(); i++) {
+            QueryPropertyHolder holder = holders.get(i);
+            result.add((dbTableNames.size() > i)
+                    ? holder.toBuilder().dbTableName(dbTableNames.get(i)).build()
+                    : holder);
+        }
+        return result;
+    }
+
     private List<QueryPropertyHolder> parseOneTablePerSheetData() {
         var result = new ArrayList<QueryPropertyHolder>();
 
@@ -0,0 +1,100 @@
+package com.example.excelparser.utils.excel;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Передает строки листа нескольким таблицам; каждая таблица записывается через свое соединение из пула
+// своими порциями. Ошибка записи таблицы прекращает передачу строк только в эту таблицу
+class FanOutRowHandler implements StreamingBookReader.RowHandler, AutoCloseable {
+    private final DatabaseWriter writer;
+    private final List<FanOutTable> tables = new ArrayList<>();
+    private final Map<String, RuntimeException> errors;
+    private final long started = System.nanoTime();
+
+    FanOutRowHandler(DatabaseWriter writer, List<QueryPropertyHolder> holders, Map<String, RuntimeException> errors) {
+        this.writer = writer;
+        this.errors = errors;
+        for (QueryPropertyHolder holder : holders) {
+            try {
+                tables.add(new FanOutTable(holder));
+            } catch (SQLException e) {
+                errors.put(holder.getDbTableName(), new RuntimeException("Не удалось получить соединение с БД", e));
+            }
+        }
+    }
+
+    @Override
+    public boolean handleRow(StreamingBookReader.StreamingRow row) {
+        boolean reading = false;
+        for (FanOutTable table : tables) {
+            if (!table.reading)
+                continue;
+            try {
+                table.reading = table.tableWriter.handleRow(row);
+            } catch (RuntimeException e) {
+                fail(table, e);
+            }
+            reading |= table.reading;
+        }
+        return reading;
+    }
+
+    // Завершает запись таблиц, получивших строки листа без ошибок
+    void finish(boolean sheetFound) {
+        for (FanOutTable table : tables) {
+            if (table.failed)
+                continue;
+            try {
+                if (!sheetFound)
+                    throw new RuntimeException("Лист \"%s\" не найден".formatted(table.holder.getSheetName()));
+                table.tableWriter.finish();
+            } catch (RuntimeException e) {
+                fail(table, e);
+            }
+            table.metrics.recordTable(System.nanoTime() - started);
+        }
+    }
+
+    private void fail(FanOutTable table, RuntimeException e) {
+        DatabaseWriter.logInfo("Ошибка записи таблицы %s: %s".formatted(table.holder.getDbTableName(), e.getMessage()));
+        table.reading = false;
+        table.failed = true;
+        errors.put(table.holder.getDbTableName(), e);
+    }
+
+    @Override
+    public void close() {
+        for (FanOutTable table : tables) {
+            try {
+                try {
+                    table.tableWriter.close();
+                } finally {
+                    table.connection.close();
+                }
+            } catch (SQLException | RuntimeException e) {
+                DatabaseWriter.logInfo("Не удалось освободить ресурсы записи таблицы %s: %s"
+                        .formatted(table.holder.getDbTableName(), e.getMessage()));
+            }
+        }
+    }
+
+    // Таблица, записываемая при едином проходе по листу
+    private class FanOutTable {
+        private final QueryPropertyHolder holder;
+        private final Connection connection;
+        private final TableMetrics metrics;
+        private final StreamingTableWriter tableWriter;
+        private boolean reading = true;
+        private boolean failed;
+
+        private FanOutTable(QueryPropertyHolder holder) throws SQLException {
+            this.holder = holder;
+            connection = writer.getDataSource().getConnection();
+            metrics = new TableMetrics(writer.getMeterRegistry(), holder);
+            tableWriter = writer.openStreamingTable(connection, holder, metrics);
+        }
+    }
+}
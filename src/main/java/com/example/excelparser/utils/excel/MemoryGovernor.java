@@ -0,0 +1,210 @@
+package com.example.excelparser.utils.excel;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.Nullable;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Распределение памяти между одновременными загрузками книг: выбор режима чтения и очередь по бюджету
+public class MemoryGovernor {
+    // доля максимального объема кучи, отводимая загрузкам книг по умолчанию
+    private static final double DEFAULT_HEAP_SHARE = 0.6;
+    private static final Duration DEFAULT_QUEUE_TIMEOUT = Duration.ofMinutes(10);
+    // номер экземпляра - значение тега governor в метриках
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    @Getter
+    private final long heapBudget;
+    // наибольший объем одной загрузки в режиме DOM (большие книги читаются потоково)
+    @Getter
+    private final long domLimit;
+    private final Duration queueTimeout;
+    // реестр метрик книг, открываемых экземпляром
+    private final MeterRegistry meterRegistry;
+    // ожидающие загрузки в порядке поступления
+    private final ArrayDeque<Object> waiters = new ArrayDeque<>();
+    private long reserved;
+
+    public enum ReaderMode {
+        // DOM-модель XSSFWorkbook (ExcelBookReader)
+        DOM,
+        // потоковое чтение, общие строки в памяти
+        STREAMING,
+        // потоковое чтение, общие строки во временном файле
+        STREAMING_TEMP_FILE
+    }
+
+    private static class DefaultHolder {
+        private static final MemoryGovernor INSTANCE = ofHeapShare(DEFAULT_HEAP_SHARE, DEFAULT_QUEUE_TIMEOUT);
+    }
+
+    public MemoryGovernor(long heapBudget, long domLimit, @NonNull Duration queueTimeout) {
+        this(heapBudget, domLimit, queueTimeout, Metrics.globalRegistry);
+    }
+
+    public MemoryGovernor(long heapBudget,
+                          long domLimit,
+                          @NonNull Duration queueTimeout,
+                          @NonNull MeterRegistry meterRegistry) {
+        if (heapBudget <= 0)
+            throw new IllegalArgumentException("Бюджет памяти должен быть больше нуля");
+        this.heapBudget = heapBudget;
+        this.domLimit = Math.min(domLimit, heapBudget);
+        this.queueTimeout = queueTimeout;
+        this.meterRegistry = meterRegistry;
+        // у каждого экземпляра свой показатель (тег governor), иначе реестр сохранит только первый
+        Gauge.builder("excel.memory.reserved", this, MemoryGovernor::getReserved)
+                .tag("governor", String.valueOf(INSTANCES.incrementAndGet()))
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    // Бюджет - доля максимального объема кучи; DOM-модель может занять не более половины бюджета
+    public static MemoryGovernor ofHeapShare(double share, Duration queueTimeout) {
+        return ofHeapShare(share, queueTimeout, Metrics.globalRegistry);
+    }
+
+    public static MemoryGovernor ofHeapShare(double share, Duration queueTimeout, @NonNull MeterRegistry meterRegistry) {
+        long heapBudget = (long) (Runtime.getRuntime().maxMemory() * share);
+        return new MemoryGovernor(heapBudget, heapBudget / 2, queueTimeout, meterRegistry);
+    }
+
+    // Общий для всех загрузок процесса экземпляр
+    public static MemoryGovernor getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    // Наименее затратный по времени режим, объем которого не превышает domLimit; иначе - наименее затратный по памяти
+    public ReaderMode chooseMode(@NonNull WorkbookEstimate estimate) {
+        if (estimate.getDomHeapBytes() <= domLimit)
+            return ReaderMode.DOM;
+        if (estimate.getStreamingHeapBytes(StreamingBookReader.SharedStringsStorage.MEMORY) <= domLimit)
+            return ReaderMode.STREAMING;
+        return ReaderMode.STREAMING_TEMP_FILE;
+    }
+
+    public static long getHeapBytes(WorkbookEstimate estimate, ReaderMode mode) {
+        return switch (mode) {
+            case DOM -> estimate.getDomHeapBytes();
+            case STREAMING -> estimate.getStreamingHeapBytes(StreamingBookReader.SharedStringsStorage.MEMORY);
+            case STREAMING_TEMP_FILE -> estimate.getStreamingHeapBytes(StreamingBookReader.SharedStringsStorage.TEMP_FILE);
+        };
+    }
+
+    // Оценивает книгу, резервирует память и открывает книгу в выбранном режиме
+    public Lease open(@NonNull Path path) throws IOException {
+        WorkbookEstimate estimate = WorkbookEstimate.of(path);
+        ReaderMode mode = chooseMode(estimate);
+        Lease lease = acquire(estimate, mode);
+        try {
+            switch (mode) {
+                case DOM -> lease.bookReader =
+                        new ExcelBookReader(path, ExcelBookReader.FormulaStrategy.ALWAYS_EVALUATE, meterRegistry);
+                case STREAMING -> lease.streamingReader =
+                        new StreamingBookReader(path, StreamingBookReader.SharedStringsStorage.MEMORY, meterRegistry);
+                case STREAMING_TEMP_FILE -> lease.streamingReader =
+                        new StreamingBookReader(path, StreamingBookReader.SharedStringsStorage.TEMP_FILE, meterRegistry);
+            }
+        } catch (IOException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+        return lease;
+    }
+
+    // Резервирует память для чтения книги в заданном режиме (ожидает освобождения памяти не дольше queueTimeout)
+    public Lease acquire(@NonNull WorkbookEstimate estimate, @NonNull ReaderMode mode) throws RuntimeException {
+        long bytes = getHeapBytes(estimate, mode);
+        if (bytes > heapBudget)
+            throw new RuntimeException("Книга (оценка %d МБ в режиме %s) не помещается в бюджет памяти %d МБ"
+                    .formatted(bytes >> 20, mode, heapBudget >> 20));
+
+        var waiter = new Object();
+        synchronized (this) {
+            waiters.add(waiter);
+            try {
+                long deadline = System.nanoTime() + queueTimeout.toNanos();
+                while (waiters.peek() != waiter || reserved + bytes > heapBudget) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        throw new RuntimeException("Превышено время ожидания памяти для загрузки книги (%d МБ)".formatted(bytes >> 20));
+                    wait(Math.max(1, remaining / 1_000_000));
+                }
+                reserved += bytes;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Ожидание памяти для загрузки книги прервано", e);
+            } finally {
+                waiters.remove(waiter);
+                // следующая в очереди загрузка может поместиться в оставшийся бюджет
+                notifyAll();
+            }
+        }
+        return new Lease(estimate, mode, bytes);
+    }
+
+    private synchronized void release(long bytes) {
+        reserved -= bytes;
+        notifyAll();
+    }
+
+    // Зарезервированная память и открытая книга; при закрытии книга закрывается, память освобождается
+    public class Lease implements Closeable {
+        @Getter
+        private final WorkbookEstimate estimate;
+        @Getter
+        private final ReaderMode mode;
+        @Getter
+        private final long reservedBytes;
+        @Nullable
+        private ExcelBookReader bookReader;
+        @Nullable
+        private StreamingBookReader streamingReader;
+        private boolean closed;
+
+        private Lease(WorkbookEstimate estimate, ReaderMode mode, long reservedBytes) {
+            this.estimate = estimate;
+            this.mode = mode;
+            this.reservedBytes = reservedBytes;
+        }
+
+        public Optional<ExcelBookReader> getBookReader() {
+            return Optional.ofNullable(bookReader);
+        }
+
+        public Optional<StreamingBookReader> getStreamingReader() {
+            return Optional.ofNullable(streamingReader);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed)
+                return;
+
+            closed = true;
+            try {
+                if (Objects.nonNull(bookReader))
+                    bookReader.close();
+                if (Objects.nonNull(streamingReader))
+                    streamingReader.close();
+            } finally {
+                release(reservedBytes);
+            }
+        }
+    }
+}
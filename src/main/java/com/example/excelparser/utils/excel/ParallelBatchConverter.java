@@ -0,0 +1,71 @@
+package com.example.excelparser.utils.excel;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+// Параллельное формирование порций диапазона строк с передачей получателю в вызывающем потоке
+public class ParallelBatchConverter {
+    // количество порций в работе на один поток пула
+    private static final int BATCHES_PER_THREAD = 2;
+
+    private final int parallelism;
+    private final boolean ordered;
+
+    @FunctionalInterface
+    public interface RangeConverter<T> {
+        T convert(int rowFrom, int rowTo) throws RuntimeException;
+    }
+
+    public ParallelBatchConverter(int parallelism, boolean ordered) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Количество потоков должно быть больше нуля");
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+    }
+
+    // Размер очередной порции запрашивается у batchRows при ее постановке в работу
+    public <T> void convert(int rowFrom,
+                            int rowTo,
+                            IntSupplier batchRows,
+                            RangeConverter<T> converter,
+                            Consumer<T> sink) throws RuntimeException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        CompletionService<T> completion = new ExecutorCompletionService<>(pool);
+        var pending = new ArrayDeque<Future<T>>();
+        int maxPending = parallelism * BATCHES_PER_THREAD;
+        try {
+            int nextRow = rowFrom;
+            while (nextRow <= rowTo || !pending.isEmpty()) {
+                while (nextRow <= rowTo && pending.size() < maxPending) {
+                    int batchFrom = nextRow;
+                    int batchTo = Math.min(batchFrom + Math.max(1, batchRows.getAsInt()) - 1, rowTo);
+                    Callable<T> task = () -> converter.convert(batchFrom, batchTo);
+                    pending.add(ordered ? pool.submit(task) : completion.submit(task));
+                    nextRow = batchTo + 1;
+                }
+
+                Future<T> done = ordered ? pending.poll() : completion.take();
+                if (!ordered)
+                    pending.remove(done);
+                sink.accept(done.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Преобразование данных прервано", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw (cause instanceof RuntimeException runtimeException)
+                    ? runtimeException
+                    : new RuntimeException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -6,7 +6,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-@Builder
+@Builder(toBuilder = true)
 @Value
 @ToString
 public class QueryPropertyHolder {
@@ -27,6 +27,11 @@ public class QueryPropertyHolder {
         private int from;
         private int to;
 
+        // Диапазон колонок по индексам (с нуля)
+        public static DataColumnInfo of(int from, int to) {
+            return new DataColumnInfo(from, to);
+        }
+
         public static DataColumnInfo parse(String rangeString) {
             try {
                 List<Integer> values = StringUtils.toStringList(rangeString, "-")
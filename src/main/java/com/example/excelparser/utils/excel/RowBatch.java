@@ -0,0 +1,15 @@
+package com.example.excelparser.utils.excel;
+
+import lombok.Value;
+
+// Порция данных, сформированная из диапазона строк листа [rowFrom, rowTo]
+@Value
+public class RowBatch<T> {
+    int rowFrom;
+    int rowTo;
+    T data;
+
+    public String getIndexRangeString() {
+        return "[%d, %d]".formatted(rowFrom, rowTo);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.excelparser.utils.excel;
+
+import com.example.excelparser.utils.database.PostgresQueryService;
+
+import java.sql.SQLException;
+import java.util.Optional;
+
+// Запись порции с делением пополам при ошибке данных; отклоненные строки сохраняются в таблицу отклоненных строк
+class RowQuarantine {
+    private final PostgresQueryService queryService;
+    // сервис целевой таблицы: отклоненные строки сохраняются с ее именем (в том числе при записи в промежуточную таблицу)
+    private final PostgresQueryService rejectService;
+    private final String fieldNames;
+    private final String sheetName;
+    private boolean rejectTableReady;
+
+    // Уже сформированные строки значений части порции с rowFrom по rowTo включительно (номера строк в порции)
+    @FunctionalInterface
+    interface RangeValues {
+        String get(int rowFrom, int rowTo) throws RuntimeException;
+    }
+
+    RowQuarantine(PostgresQueryService queryService, PostgresQueryService rejectService, String fieldNames, String sheetName) {
+        this.queryService = queryService;
+        this.rejectService = rejectService;
+        this.fieldNames = fieldNames;
+        this.sheetName = sheetName;
+    }
+
+    // Записывает строки порции со значениями values (rowIndexes - индексы строк листа по порядку строк порции);
+    // возвращает количество отклоненных строк
+    int insert(int[] rowIndexes, String values, RangeValues rangeValues) throws RuntimeException {
+        if (rowIndexes.length == 0)
+            return 0;
+        try {
+            return insertRange(rowIndexes, 0, rowIndexes.length - 1, values, rangeValues);
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось записать порцию данных [%d, %d] в БД"
+                    .formatted(rowIndexes[0], rowIndexes[rowIndexes.length - 1]), e);
+        }
+    }
+
+    private int insertRange(int[] rowIndexes, int rowFrom, int rowTo, String values, RangeValues rangeValues) throws SQLException {
+        Optional<String> error = queryService.tryInsertData(fieldNames, values);
+        if (error.isEmpty())
+            return 0;
+
+        if (rowFrom == rowTo) {
+            reject(rowIndexes[rowFrom], error.get(), values);
+            return 1;
+        }
+        int middle = (rowFrom + rowTo) >>> 1;
+        return insertRange(rowIndexes, rowFrom, middle, rangeValues.get(rowFrom, middle), rangeValues)
+                + insertRange(rowIndexes, middle + 1, rowTo, rangeValues.get(middle + 1, rowTo), rangeValues);
+    }
+
+    private void reject(int rowIndex, String errorMessage, String values) throws RuntimeException {
+        // таблица создается при первой отклоненной строке, чтобы не создавать ее для чистых загрузок
+        if (!rejectTableReady) {
+            if (!rejectService.tryCreateRejectTable())
+                throw new RuntimeException("Не удалось создать таблицу отклоненных строк");
+            rejectTableReady = true;
+        }
+        if (!rejectService.saveRejectedRow(sheetName, rowIndex, errorMessage, values))
+            throw new RuntimeException("Не удалось сохранить отклоненную строку %d".formatted(rowIndex));
+    }
+}
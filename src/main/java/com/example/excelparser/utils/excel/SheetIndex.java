@@ -0,0 +1,205 @@
+package com.example.excelparser.utils.excel;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// Индекс непустых ячеек листа (диапазоны колонок по строкам), построенный за один проход
+public class SheetIndex {
+    // индексы непустых строк (по возрастанию)
+    private final int[] rows;
+    // rowSpans[i]..rowSpans[i + 1] - номера диапазонов строки rows[i]
+    private final int[] rowSpans;
+    // границы диапазонов: spans[2 * k] - первая колонка, spans[2 * k + 1] - последняя колонка
+    private final int[] spans;
+
+    private SheetIndex(int[] rows, int[] rowSpans, int[] spans) {
+        this.rows = rows;
+        this.rowSpans = rowSpans;
+        this.spans = spans;
+    }
+
+    // Индекс листа книги (DOM-модель)
+    public static SheetIndex of(Sheet sheet) {
+        var builder = new Builder();
+        for (Row row : sheet) {
+            for (Cell cell : row) {
+                if (!isBlank(cell))
+                    builder.addCell(row.getRowNum(), cell.getColumnIndex());
+            }
+        }
+        return builder.build();
+    }
+
+    static boolean isBlank(Cell cell) {
+        if (Objects.isNull(cell))
+            return true;
+        CellType cellType = cell.getCellType();
+        return CellType.BLANK == cellType
+                || (CellType.STRING == cellType && cell.getStringCellValue().isBlank());
+    }
+
+    public boolean isEmpty() {
+        return rows.length == 0;
+    }
+
+    // Количество непустых строк
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    // Индекс i-й непустой строки
+    public int getRow(int i) {
+        return rows[i];
+    }
+
+    public int getFirstRow() {
+        return isEmpty() ? -1 : rows[0];
+    }
+
+    public int getLastRow() {
+        return isEmpty() ? -1 : rows[rows.length - 1];
+    }
+
+    public boolean hasRow(int rowIndex) {
+        return Arrays.binarySearch(rows, rowIndex) >= 0;
+    }
+
+    // Количество непустых ячеек строки в диапазоне колонок [columnFrom, columnTo]
+    public int countCells(int rowIndex, int columnFrom, int columnTo) {
+        int i = Arrays.binarySearch(rows, rowIndex);
+        return (i < 0) ? 0 : countRowCells(i, columnFrom, columnTo);
+    }
+
+    // Количество непустых ячеек i-й непустой строки в диапазоне колонок [columnFrom, columnTo]
+    public int countRowCells(int i, int columnFrom, int columnTo) {
+        int count = 0;
+        for (int k = rowSpans[i]; k < rowSpans[i + 1]; k++) {
+            int from = Math.max(spans[2 * k], columnFrom);
+            int to = Math.min(spans[2 * k + 1], columnTo);
+            if (from <= to)
+                count += to - from + 1;
+        }
+        return count;
+    }
+
+    // Первая и последняя непустые колонки i-й непустой строки в диапазоне [columnFrom, columnTo] ({-1, -1}, если их нет)
+    public int[] getRowBounds(int i, int columnFrom, int columnTo) {
+        int first = -1;
+        int last = -1;
+        for (int k = rowSpans[i]; k < rowSpans[i + 1]; k++) {
+            int from = Math.max(spans[2 * k], columnFrom);
+            int to = Math.min(spans[2 * k + 1], columnTo);
+            if (from > to)
+                continue;
+            if (first < 0)
+                first = from;
+            last = to;
+        }
+        return new int[]{first, last};
+    }
+
+    // Индекс последней строки в диапазоне [rowFrom, rowTo], имеющей непустые ячейки в колонках [columnFrom, columnTo]
+    // (-1, если таких строк нет)
+    public int getLastRow(int rowFrom, int rowTo, int columnFrom, int columnTo) {
+        int i = Arrays.binarySearch(rows, rowTo);
+        i = (i < 0) ? -i - 2 : i;
+        for (; i >= 0 && rows[i] >= rowFrom; i--) {
+            if (countRowCells(i, columnFrom, columnTo) > 0)
+                return rows[i];
+        }
+        return -1;
+    }
+
+    // Индекс последней строки в диапазоне [rowFrom, rowTo], имеющей непустую ячейку в одной из колонок columns
+    // (-1, если таких строк нет)
+    public int getLastRow(int rowFrom, int rowTo, int[] columns) {
+        int i = Arrays.binarySearch(rows, rowTo);
+        i = (i < 0) ? -i - 2 : i;
+        for (; i >= 0 && rows[i] >= rowFrom; i--) {
+            for (int column : columns) {
+                if (countRowCells(i, column, column) > 0)
+                    return rows[i];
+            }
+        }
+        return -1;
+    }
+
+    // Занятость колонок: result[c] - количество строк, имеющих не менее minCells непустых ячеек и ячейку в колонке c
+    public int[] getColumnOccupancy(int minCells) {
+        int lastColumn = -1;
+        for (int k = 1; k < spans.length; k += 2)
+            lastColumn = Math.max(lastColumn, spans[k]);
+
+        int[] delta = new int[lastColumn + 2];
+        for (int i = 0; i < rows.length; i++) {
+            if (countRowCells(i, 0, Integer.MAX_VALUE) < minCells)
+                continue;
+            for (int k = rowSpans[i]; k < rowSpans[i + 1]; k++) {
+                delta[spans[2 * k]]++;
+                delta[spans[2 * k + 1] + 1]--;
+            }
+        }
+        int[] occupancy = new int[lastColumn + 1];
+        for (int c = 0, current = 0; c <= lastColumn; c++) {
+            current += delta[c];
+            occupancy[c] = current;
+        }
+        return occupancy;
+    }
+
+    // Построение индекса: ячейки передаются по возрастанию строк и колонок
+    public static class Builder {
+        private int[] rows = new int[256];
+        private int[] rowSpans = new int[257];
+        private int[] spans = new int[512];
+        private int rowCount;
+        private int spanCount;
+        private int currentRow = -1;
+
+        public Builder addCell(int rowIndex, int columnIndex) {
+            if (rowIndex != currentRow) {
+                if (rowIndex < currentRow)
+                    throw new RuntimeException("Строки листа должны передаваться по возрастанию индексов");
+                startRow(rowIndex);
+            }
+
+            // ячейка продолжает последний диапазон строки или начинает новый
+            if (spanCount > rowSpans[rowCount - 1] && spans[2 * spanCount - 1] >= columnIndex - 1) {
+                spans[2 * spanCount - 1] = Math.max(spans[2 * spanCount - 1], columnIndex);
+                return this;
+            }
+            if (2 * spanCount + 2 > spans.length)
+                spans = Arrays.copyOf(spans, spans.length * 2);
+            spans[2 * spanCount] = columnIndex;
+            spans[2 * spanCount + 1] = columnIndex;
+            spanCount++;
+            rowSpans[rowCount] = spanCount;
+            return this;
+        }
+
+        private void startRow(int rowIndex) {
+            if (rowCount == rows.length) {
+                rows = Arrays.copyOf(rows, rows.length * 2);
+                rowSpans = Arrays.copyOf(rowSpans, rows.length + 1);
+            }
+            rows[rowCount] = rowIndex;
+            rowSpans[rowCount] = spanCount;
+            rowCount++;
+            rowSpans[rowCount] = spanCount;
+            currentRow = rowIndex;
+        }
+
+        public SheetIndex build() {
+            return new SheetIndex(
+                    Arrays.copyOf(rows, rowCount),
+                    Arrays.copyOf(rowSpans, rowCount + 1),
+                    Arrays.copyOf(spans, 2 * spanCount)
+            );
+        }
+    }
+}
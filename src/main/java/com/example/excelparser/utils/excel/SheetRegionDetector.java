@@ -0,0 +1,129 @@
+package com.example.excelparser.utils.excel;
+
+import com.ibm.icu.text.Transliterator;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Поиск таблиц на листе по индексу непустых ячеек (полосы колонок и блоки строк с заголовком)
+public class SheetRegionDetector {
+    private static final Transliterator TRANSLITERATOR = Transliterator.getInstance("Russian-Latin/BGN");
+    // строки с одной ячейкой (названия, примечания) не учитываются при делении листа на полосы колонок
+    private static final int MIN_BAND_ROW_CELLS = 2;
+
+    // наименьшее количество строк данных, при котором блок считается таблицей
+    private final int minDataRows;
+
+    public SheetRegionDetector() {
+        this(1);
+    }
+
+    public SheetRegionDetector(int minDataRows) {
+        this.minDataRows = Math.max(1, minDataRows);
+    }
+
+    // Предлагаемые таблицы листа: имя таблицы БД формируется по имени листа (с номером, если таблиц несколько)
+    public List<QueryPropertyHolder> detect(@NonNull String sheetName, @NonNull SheetIndex index) {
+        var regions = new ArrayList<int[]>();
+        for (int[] band : findColumnBands(index))
+            regions.addAll(findRegions(index, band[0], band[1]));
+
+        String tableName = transliterate(sheetName);
+        var result = new ArrayList<QueryPropertyHolder>();
+        for (int i = 0; i < regions.size(); i++) {
+            int[] region = regions.get(i);
+            result.add(QueryPropertyHolder.builder()
+                    .sheetName(sheetName)
+                    .dbTableName((regions.size() > 1) ? tableName + "_" + (i + 1) : tableName)
+                    .dbFieldNames(List.of())
+                    .headerRow(region[0])
+                    .firstDataRow(region[0] + 1)
+                    .lastDataRow(Optional.of(region[1]))
+                    .dataColumnInfo(Optional.of(QueryPropertyHolder.DataColumnInfo.of(region[2], region[3])))
+                    .build());
+        }
+        return result;
+    }
+
+    // Полосы колонок [from, to], разделенные пустыми колонками
+    private List<int[]> findColumnBands(SheetIndex index) {
+        int[] occupancy = index.getColumnOccupancy(MIN_BAND_ROW_CELLS);
+        if (occupancy.length == 0)
+            occupancy = index.getColumnOccupancy(1);
+
+        var bands = new ArrayList<int[]>();
+        int from = -1;
+        for (int column = 0; column <= occupancy.length; column++) {
+            boolean occupied = column < occupancy.length && occupancy[column] > 0;
+            if (occupied && from < 0) {
+                from = column;
+            } else if (!occupied && from >= 0) {
+                bands.add(new int[]{from, column - 1});
+                from = -1;
+            }
+        }
+        return bands;
+    }
+
+    // Таблицы полосы колонок: {строка заголовка, последняя строка данных, первая колонка, последняя колонка}
+    private List<int[]> findRegions(SheetIndex index, int columnFrom, int columnTo) {
+        var regions = new ArrayList<int[]>();
+        int blockStart = -1;
+        int previousRow = -1;
+        for (int i = 0; i < index.getRowCount(); i++) {
+            if (index.countRowCells(i, columnFrom, columnTo) == 0)
+                continue;
+
+            // пустая строка завершает блок
+            if (blockStart >= 0 && index.getRow(i) != index.getRow(previousRow) + 1) {
+                addRegion(index, blockStart, previousRow, columnFrom, columnTo, regions);
+                blockStart = -1;
+            }
+            if (blockStart < 0)
+                blockStart = i;
+            previousRow = i;
+        }
+        if (blockStart >= 0)
+            addRegion(index, blockStart, previousRow, columnFrom, columnTo, regions);
+        return regions;
+    }
+
+    // Блок строк index.getRow(first)..index.getRow(last) (номера непустых строк индекса)
+    private void addRegion(SheetIndex index, int first, int last, int columnFrom, int columnTo, List<int[]> regions) {
+        int blockFrom = Integer.MAX_VALUE;
+        int blockTo = -1;
+        for (int i = first; i <= last; i++) {
+            int[] bounds = index.getRowBounds(i, columnFrom, columnTo);
+            blockFrom = Math.min(blockFrom, bounds[0]);
+            blockTo = Math.max(blockTo, bounds[1]);
+        }
+
+        int minHeaderCells = (blockTo - blockFrom + 2) / 2;
+        int header = first;
+        while (header <= last && index.countRowCells(header, blockFrom, blockTo) < minHeaderCells)
+            header++;
+        if (header > last)
+            return;
+
+        // колонки таблицы - непрерывный диапазон заполненных ячеек заголовка; заголовок с пропусками не принимается
+        int[] headerBounds = index.getRowBounds(header, blockFrom, blockTo);
+        int tableFrom = headerBounds[0];
+        int tableTo = headerBounds[1];
+        if (index.countRowCells(header, tableFrom, tableTo) != tableTo - tableFrom + 1)
+            return;
+
+        // последняя строка блока со значениями в колонках заголовка
+        int lastData = last;
+        while (lastData > header && index.countRowCells(lastData, tableFrom, tableTo) == 0)
+            lastData--;
+        if (lastData - header < minDataRows)
+            return;
+        regions.add(new int[]{index.getRow(header), index.getRow(lastData), tableFrom, tableTo});
+    }
+
+    private String transliterate(String s) {
+        return TRANSLITERATOR.transliterate(s).strip().replaceAll("\\W+", "_");
+    }
+}
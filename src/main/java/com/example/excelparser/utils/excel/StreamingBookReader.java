@@ -0,0 +1,584 @@
+package com.example.excelparser.utils.excel;
+
+import com.example.excelparser.utils.database.PostgresType;
+import com.example.excelparser.utils.database.PostgresValuesEncoder;
+import com.ibm.icu.text.Transliterator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.Nullable;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Потоковое (SAX) чтение листов книги без построения DOM-модели XSSFWorkbook
+public class StreamingBookReader implements Closeable {
+    private static final Transliterator TRANSLITERATOR = Transliterator.getInstance("Russian-Latin/BGN");
+    // количество общих строк, кэшируемых в памяти при хранении таблицы во временном файле
+    private static final int SHARED_STRINGS_CACHE_SIZE = 4096;
+    private final OPCPackage opcPackage;
+    private final XSSFReader xssfReader;
+    private final SharedStrings sharedStrings;
+    private final StylesTable stylesTable;
+    // признак формата даты по индексу стиля ячейки
+    private final DateFormatCache dateFormats;
+    // временный файл, в который был сохранен входной поток (удаляется при закрытии)
+    private final Path tempFile;
+    private final Path path;
+    private String fileHash;
+    // индексы непустых ячеек листов (имя листа -> индекс), строятся при первом обращении
+    private final Map<String, SheetIndex> sheetIndexes = new HashMap<>();
+
+    public enum SharedStringsStorage {
+        // общие строки загружаются в память
+        MEMORY,
+        // общие строки хранятся во временном файле, в памяти - только LRU-кэш
+        TEMP_FILE
+    }
+
+    public StreamingBookReader(File file) throws IOException {
+        this(file.toPath(), false, SharedStringsStorage.MEMORY, Metrics.globalRegistry);
+    }
+
+    public StreamingBookReader(File file, @NonNull SharedStringsStorage sharedStringsStorage) throws IOException {
+        this(file.toPath(), false, sharedStringsStorage, Metrics.globalRegistry);
+    }
+
+    public StreamingBookReader(Path path) throws IOException {
+        this(path, false, SharedStringsStorage.MEMORY, Metrics.globalRegistry);
+    }
+
+    public StreamingBookReader(Path path, @NonNull SharedStringsStorage sharedStringsStorage) throws IOException {
+        this(path, false, sharedStringsStorage, Metrics.globalRegistry);
+    }
+
+    // Время открытия книги публикуется в meterRegistry с тегом книги
+    public StreamingBookReader(Path path,
+                               @NonNull SharedStringsStorage sharedStringsStorage,
+                               @NonNull MeterRegistry meterRegistry) throws IOException {
+        this(path, false, sharedStringsStorage, meterRegistry);
+    }
+
+    public StreamingBookReader(InputStream inputStream) throws IOException {
+        this(BookFiles.spoolToTempFile(inputStream), true, SharedStringsStorage.MEMORY, Metrics.globalRegistry);
+    }
+
+    public StreamingBookReader(InputStream inputStream, @NonNull SharedStringsStorage sharedStringsStorage) throws IOException {
+        this(BookFiles.spoolToTempFile(inputStream), true, sharedStringsStorage, Metrics.globalRegistry);
+    }
+
+    public StreamingBookReader(InputStream inputStream,
+                               @NonNull SharedStringsStorage sharedStringsStorage,
+                               @NonNull MeterRegistry meterRegistry) throws IOException {
+        this(BookFiles.spoolToTempFile(inputStream), true, sharedStringsStorage, meterRegistry);
+    }
+
+    private StreamingBookReader(Path path,
+                                boolean temporary,
+                                SharedStringsStorage sharedStringsStorage,
+                                MeterRegistry meterRegistry) throws IOException {
+        this.path = path;
+        tempFile = temporary ? path : null;
+        long started = System.nanoTime();
+        try {
+            opcPackage = OPCPackage.open(path.toFile(), PackageAccess.READ);
+            xssfReader = new XSSFReader(opcPackage);
+            sharedStrings = (SharedStringsStorage.TEMP_FILE == sharedStringsStorage)
+                    ? openDiskSharedStrings(opcPackage)
+                    : new ReadOnlySharedStringsTable(opcPackage);
+            stylesTable = xssfReader.getStylesTable();
+            dateFormats = Objects.nonNull(stylesTable)
+                    ? new DateFormatCache(stylesTable.getNumCellStyles(), stylesTable::getStyleAt)
+                    : null;
+        } catch (OpenXML4JException | SAXException e) {
+            deleteTempFile();
+            throw new IOException("Не удалось открыть книгу для потокового чтения", e);
+        }
+        meterRegistry.timer("excel.workbook.open", "reader", "streaming", "book", BookFiles.getBookTag(path, temporary))
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private static DiskSharedStrings openDiskSharedStrings(OPCPackage opcPackage) throws IOException {
+        List<PackagePart> parts = opcPackage.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (parts.isEmpty())
+            return new DiskSharedStrings();
+
+        try (InputStream sharedStringsStream = parts.get(0).getInputStream()) {
+            return new DiskSharedStrings(sharedStringsStream, SHARED_STRINGS_CACHE_SIZE);
+        }
+    }
+
+    private void deleteTempFile() throws IOException {
+        if (Objects.nonNull(tempFile))
+            Files.deleteIfExists(tempFile);
+    }
+
+    // Хэш содержимого файла книги (вычисляется при первом обращении)
+    public synchronized String getFileHash() throws IOException {
+        if (Objects.isNull(fileHash))
+            fileHash = BookFiles.sha256(path);
+        return fileHash;
+    }
+
+    // Индекс непустых ячеек листа, построенный за один потоковый проход (пусто, если лист не найден)
+    public synchronized Optional<SheetIndex> getSheetIndex(String sheetName) throws IOException {
+        SheetIndex sheetIndex = sheetIndexes.get(sheetName);
+        if (Objects.nonNull(sheetIndex))
+            return Optional.of(sheetIndex);
+
+        var builder = new SheetIndex.Builder();
+        boolean found = readSheet(sheetName, row -> {
+            for (int column = row.getFirstCellNum(); column >= 0 && column < row.getLastCellNum(); column++) {
+                StreamingCell cell = row.getCell(column);
+                if (Objects.nonNull(cell) && !(CellType.STRING == cell.getType() && cell.getValue().isBlank()))
+                    builder.addCell(row.getIndex(), column);
+            }
+            return true;
+        });
+        if (!found)
+            return Optional.empty();
+
+        sheetIndex = builder.build();
+        sheetIndexes.put(sheetName, sheetIndex);
+        return Optional.of(sheetIndex);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sharedStrings instanceof DiskSharedStrings diskSharedStrings)
+            diskSharedStrings.close();
+        // пакет открыт только для чтения, поэтому изменения не сохраняются
+        opcPackage.revert();
+        deleteTempFile();
+    }
+
+    public List<String> getSheetNames() throws IOException {
+        var result = new ArrayList<String>();
+        try {
+            var iterator = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            while (iterator.hasNext()) {
+                try (InputStream ignored = iterator.next()) {
+                    result.add(iterator.getSheetName());
+                }
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        }
+        return result;
+    }
+
+    public Optional<String> getFirstSheetName() throws IOException {
+        return getSheetNames().stream().findFirst();
+    }
+
+    // Построчно передает обработчику строки листа (false, если лист не найден)
+    public boolean readSheet(String sheetName, RowHandler handler) throws IOException {
+        try {
+            var iterator = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            while (iterator.hasNext()) {
+                try (InputStream sheetStream = iterator.next()) {
+                    if (!iterator.getSheetName().equals(sheetName))
+                        continue;
+
+                    parseSheet(sheetStream, handler);
+                    return true;
+                }
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Ошибка чтения листа \"%s\"".formatted(sheetName), e);
+        }
+        return false;
+    }
+
+    private void parseSheet(InputStream sheetStream, RowHandler handler)
+            throws IOException, SAXException, ParserConfigurationException {
+        XMLReader xmlReader = XMLHelper.newXMLReader();
+        xmlReader.setContentHandler(new SheetHandler(handler));
+        try {
+            xmlReader.parse(new InputSource(sheetStream));
+        } catch (StopReadingException e) {
+            // обработчик прервал чтение листа
+        }
+    }
+
+    // Проверяет, не выходит ли диапазон индексов колонок за пределы размера списка полей
+    private boolean checkColumnIndexesValid(int columnFromIndex, int columnToIndex, int fieldCount) {
+        return (columnToIndex - columnFromIndex + 1) <= fieldCount;
+    }
+
+    // Формирует коллекцию типов данных по строке заголовка
+    public Map<String, String> getPostgresTypesByHeaderRow(@NonNull StreamingRow headerRow,
+                                                           @NonNull StreamingRow dataRow,
+                                                           Optional<Integer> columnFromIndex,
+                                                           Optional<Integer> columnToIndex) {
+        var result = new LinkedHashMap<String, String>();
+
+        // если индексы колонок не заданы, берем диапазон ячеек строки заголовка
+        int indexFrom = columnFromIndex.orElseGet(headerRow::getFirstCellNum);
+        int indexTo = columnToIndex.orElseGet(() -> headerRow.getLastCellNum() - 1);
+
+        // проверка индексов колонок
+        if (!checkColumnIndexesValid(indexFrom, indexTo, headerRow.getPhysicalNumberOfCells()))
+            return result;
+
+        for (int i = indexFrom; i <= indexTo; i++) {
+            StreamingCell headerCell = headerRow.getCell(i);
+            // пустая ячейка заголовка - имя поля сформировать невозможно
+            if (Objects.isNull(headerCell))
+                return new LinkedHashMap<>();
+
+            String fieldName = TRANSLITERATOR
+                    .transliterate(headerCell.getValue())
+                    .strip()
+                    .replaceAll("\\W+", "_");
+            String fieldType = toPostgresType(dataRow.getCell(i));
+
+            result.put(fieldName, fieldType);
+        }
+        return result;
+    }
+
+    // Формирует коллекцию типов данных по списку имен колонок
+    public Map<String, String> getPostgresTypesByFieldNames(@NonNull StreamingRow dataRow,
+                                                            List<String> fieldNames,
+                                                            Optional<Integer> columnFromIndex,
+                                                            Optional<Integer> columnToIndex) {
+        var result = new LinkedHashMap<String, String>();
+
+        // если индексы колонок не заданы, берем диапазон списка имен полей
+        int indexFrom = columnFromIndex.orElse(0);
+        int indexTo = columnToIndex.orElseGet(() -> fieldNames.size() - 1);
+
+        // проверка индексов колонок
+        if (!checkColumnIndexesValid(indexFrom, indexTo, fieldNames.size()))
+            return result;
+
+        for (int i = 0; i < fieldNames.size(); i++) {
+            int cellIndex = indexFrom + i;
+            // формируем данные до columnToIndex
+            if (cellIndex > indexTo)
+                break;
+
+            String fieldName = fieldNames.get(i)
+                    .strip()
+                    .replaceAll("\\W+", "_");
+            String fieldType = toPostgresType(dataRow.getCell(cellIndex));
+
+            result.put(fieldName, fieldType);
+        }
+        return result;
+    }
+
+    private String toPostgresType(@Nullable StreamingCell cell) {
+        if (Objects.isNull(cell))
+            return "TEXT";
+
+        switch (cell.getType()) {
+            case NUMERIC -> {
+                return cell.isDateFormatted() ? "TIMESTAMP" : "DOUBLE PRECISION";
+            }
+            case BOOLEAN -> {
+                return "BOOLEAN";
+            }
+            default -> {
+                return "TEXT";
+            }
+        }
+    }
+
+    // Дописывает значения полей строки в буфер порции в том же формате, что и ExcelBookReader.toPostgresTableValues
+    public void appendPostgresRowValues(@NonNull PostgresValuesEncoder encoder,
+                                        @NonNull StreamingRow row,
+                                        ColumnPlan plan) {
+        encoder.beginRow();
+        for (int i = 0; i < plan.size(); i++) {
+            StreamingCell cell = row.getCell(plan.getColumnIndex(i));
+            if (Objects.isNull(cell))
+                encoder.appendNull();
+            else
+                appendValue(encoder, cell, plan.getColumnType(i));
+        }
+        encoder.endRow();
+    }
+
+    // Формирует типизированные значения полей строки (как и ExcelBookReader.toPostgresRowObjects)
+    public Object[] toPostgresRowObjects(@NonNull StreamingRow row, ColumnPlan plan) {
+        var values = new Object[plan.size()];
+
+        for (int i = 0; i < values.length; i++) {
+            StreamingCell cell = row.getCell(plan.getColumnIndex(i));
+            values[i] = Objects.isNull(cell) ? null : toObject(cell, plan.getColumnType(i));
+        }
+        return values;
+    }
+
+    @Nullable
+    private Object toObject(StreamingCell cell, PostgresType columnType) {
+        switch (cell.getType()) {
+            case NUMERIC -> {
+                return toNumericObject(cell, columnType);
+            }
+            case BOOLEAN -> {
+                // результат формулы записывается независимо от типа поля (как и в ExcelBookReader)
+                return (cell.isFormula() || PostgresType.BOOLEAN == columnType)
+                        ? "1".equals(cell.getValue())
+                        : null;
+            }
+            case STRING -> {
+                return (cell.isFormula() || PostgresType.TEXT == columnType)
+                        ? cell.getValue()
+                        : null;
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    // Значение ячейки по тем же правилам, что и toObject, но без промежуточных объектов
+    private void appendValue(PostgresValuesEncoder encoder, StreamingCell cell, PostgresType columnType) {
+        switch (cell.getType()) {
+            case NUMERIC -> {
+                // дата или число
+                PostgresType cellType = cell.isDateFormatted() ? PostgresType.TIMESTAMP : PostgresType.DOUBLE_PRECISION;
+                if (cellType != columnType)
+                    encoder.appendNull();
+                else if (PostgresType.TIMESTAMP == cellType)
+                    encoder.appendDate(DateUtil.getLocalDateTime(Double.parseDouble(cell.getValue())));
+                else
+                    encoder.appendDouble(Double.parseDouble(cell.getValue()));
+            }
+            case BOOLEAN -> {
+                if (cell.isFormula() || PostgresType.BOOLEAN == columnType)
+                    encoder.appendBoolean("1".equals(cell.getValue()));
+                else
+                    encoder.appendNull();
+            }
+            case STRING -> {
+                if (cell.isFormula() || PostgresType.TEXT == columnType)
+                    encoder.appendText(cell.getValue());
+                else
+                    encoder.appendNull();
+            }
+            default -> encoder.appendNull();
+        }
+    }
+
+    @Nullable
+    private Object toNumericObject(StreamingCell cell, PostgresType columnType) {
+        // дата
+        if (cell.isDateFormatted()) {
+            return (PostgresType.TIMESTAMP == columnType)
+                    ? DateUtil.getLocalDateTime(Double.parseDouble(cell.getValue())).truncatedTo(ChronoUnit.DAYS)
+                    : null;
+        }
+        // число
+        return (PostgresType.DOUBLE_PRECISION == columnType)
+                ? Double.parseDouble(cell.getValue())
+                : null;
+    }
+
+    private boolean isDateFormatted(int styleIndex, double value) {
+        if (Objects.isNull(stylesTable) || styleIndex >= stylesTable.getNumCellStyles())
+            return false;
+
+        return dateFormats.isDateFormatted(styleIndex, value);
+    }
+
+    @FunctionalInterface
+    public interface RowHandler {
+        // false, если чтение листа нужно прекратить
+        boolean handleRow(StreamingRow row);
+    }
+
+    @Value
+    public static class StreamingCell {
+        CellType type;
+        String value;
+        boolean dateFormatted;
+        boolean formula;
+    }
+
+    public static class StreamingRow {
+        @Getter
+        private final int index;
+        private final Map<Integer, StreamingCell> cells = new HashMap<>();
+        private int firstCellNum = -1;
+        private int lastCellNum = -1;
+
+        private StreamingRow(int index) {
+            this.index = index;
+        }
+
+        private void addCell(int column, StreamingCell cell) {
+            cells.put(column, cell);
+            firstCellNum = (firstCellNum < 0) ? column : Math.min(firstCellNum, column);
+            lastCellNum = Math.max(lastCellNum, column + 1);
+        }
+
+        // Возвращает ячейку со значением или null для пустой ячейки
+        @Nullable
+        public StreamingCell getCell(int column) {
+            return cells.get(column);
+        }
+
+        public int getFirstCellNum() {
+            return firstCellNum;
+        }
+
+        // Как и Row.getLastCellNum, возвращает индекс последней ячейки плюс один
+        public int getLastCellNum() {
+            return lastCellNum;
+        }
+
+        public int getPhysicalNumberOfCells() {
+            return cells.size();
+        }
+    }
+
+    private static class StopReadingException extends SAXException {
+    }
+
+    // Разбор XML листа: <row r="1"><c r="A1" t="s" s="1"><f/><v>0</v></c></row>
+    private class SheetHandler extends DefaultHandler {
+        private final RowHandler rowHandler;
+        private final StringBuilder value = new StringBuilder();
+        private StreamingRow currentRow;
+        private int nextRowIndex = 0;
+        private int nextColumnIndex = 0;
+        private int cellColumn;
+        private String cellType;
+        private int cellStyle;
+        private boolean cellFormula;
+        private boolean collecting;
+        private boolean inlineString;
+
+        private SheetHandler(RowHandler rowHandler) {
+            this.rowHandler = rowHandler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (elementName(localName, qName)) {
+                case "row" -> {
+                    String r = attributes.getValue("r");
+                    int rowIndex = Objects.nonNull(r) ? Integer.parseInt(r) - 1 : nextRowIndex;
+                    currentRow = new StreamingRow(rowIndex);
+                    nextRowIndex = rowIndex + 1;
+                    nextColumnIndex = 0;
+                }
+                case "c" -> {
+                    String r = attributes.getValue("r");
+                    cellColumn = Objects.nonNull(r) ? toColumnIndex(r) : nextColumnIndex;
+                    nextColumnIndex = cellColumn + 1;
+                    cellType = attributes.getValue("t");
+                    String s = attributes.getValue("s");
+                    cellStyle = Objects.nonNull(s) ? Integer.parseInt(s) : 0;
+                    cellFormula = false;
+                    inlineString = false;
+                    value.setLength(0);
+                }
+                case "f" -> cellFormula = true;
+                case "is" -> inlineString = true;
+                case "v" -> collecting = true;
+                case "t" -> collecting = inlineString;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting)
+                value.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (elementName(localName, qName)) {
+                case "v", "t" -> collecting = false;
+                case "c" -> {
+                    StreamingCell cell = toCell();
+                    if (Objects.nonNull(cell))
+                        currentRow.addCell(cellColumn, cell);
+                }
+                case "row" -> {
+                    if (!rowHandler.handleRow(currentRow))
+                        throw new StopReadingException();
+                }
+                default -> {
+                }
+            }
+        }
+
+        @Nullable
+        private StreamingCell toCell() {
+            if (value.isEmpty())
+                return null;
+
+            String text = value.toString();
+            switch (Objects.requireNonNullElse(cellType, "n")) {
+                case "s" -> {
+                    String sharedString = sharedStrings.getItemAt(Integer.parseInt(text)).getString();
+                    return new StreamingCell(CellType.STRING, sharedString, false, cellFormula);
+                }
+                case "str", "inlineStr", "d" -> {
+                    return new StreamingCell(CellType.STRING, text, false, cellFormula);
+                }
+                case "b" -> {
+                    return new StreamingCell(CellType.BOOLEAN, text, false, cellFormula);
+                }
+                case "e" -> {
+                    return new StreamingCell(CellType.ERROR, text, false, cellFormula);
+                }
+                default -> {
+                    boolean dateFormatted = isDateFormatted(cellStyle, Double.parseDouble(text));
+                    return new StreamingCell(CellType.NUMERIC, text, dateFormatted, cellFormula);
+                }
+            }
+        }
+
+        private static String elementName(String localName, String qName) {
+            return localName.isEmpty() ? qName : localName;
+        }
+
+        // Индекс колонки по адресу ячейки (например, "AB12" -> 27)
+        private static int toColumnIndex(String cellReference) {
+            int column = 0;
+            for (int i = 0; i < cellReference.length(); i++) {
+                char ch = cellReference.charAt(i);
+                if (ch < 'A' || ch > 'Z')
+                    break;
+                column = column * 26 + (ch - 'A' + 1);
+            }
+            return column - 1;
+        }
+    }
+}
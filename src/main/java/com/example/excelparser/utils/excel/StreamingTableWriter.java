@@ -0,0 +1,300 @@
+package com.example.excelparser.utils.excel;
+
+import com.example.excelparser.utils.database.PostgresQueryService;
+import com.example.excelparser.utils.database.PostgresQueryService.InsertMode;
+import com.example.excelparser.utils.database.PostgresRowWriter;
+import com.example.excelparser.utils.database.PostgresValuesEncoder;
+import com.example.excelparser.utils.excel.DatabaseWriter.LoadStrategy;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+// Принимает строки листа от StreamingBookReader и записывает их в БД порциями (размер порции задает batchSizer)
+class StreamingTableWriter implements StreamingBookReader.RowHandler, AutoCloseable {
+    private static final int VALUES_BUFFER_CAPACITY = 64 * 1024;
+
+    // параметры загрузки и общие шаги записи таблицы
+    private final DatabaseWriter writer;
+    private final StreamingBookReader streamingReader;
+    private final PostgresQueryService targetService;
+    private final QueryPropertyHolder holder;
+    private final Optional<Integer> columnFrom;
+    private final Optional<Integer> columnTo;
+    // строки значений текущей порции (буфер переиспользуется от порции к порции)
+    private final PostgresValuesEncoder batch = new PostgresValuesEncoder(VALUES_BUFFER_CAPACITY);
+    private final InsertMode mode;
+    private final TableMetrics metrics;
+    private final BatchSizer batchSizer;
+    // сервис таблицы, в которую записываются строки (целевой или промежуточной)
+    private PostgresQueryService queryService;
+    private boolean staged;
+    private BatchCommitter committer;
+    private PostgresRowWriter rowWriter;
+    private RowQuarantine quarantine;
+    private StreamingBookReader.StreamingRow headerRow;
+    private Map<String, String> postgresTypes;
+    private ColumnPlan plan;
+    private int nextRowIndex;
+    private int batchFirstRow;
+    private int batchLastRow;
+    // индексы строк листа текущей порции по порядку строк в буфере значений
+    private int[] batchRowIndexes = new int[256];
+    // пустые строки, записываемые только если за ними следует строка со значениями
+    private final List<StreamingBookReader.StreamingRow> pendingEmptyRows = new ArrayList<>();
+    // первая строка текущего пропуска из пустых или отсутствующих строк (-1, если пропуска нет)
+    private int gapFirstRow = -1;
+    // первая строка пропуска длиной emptyRowLimit, на которой завершена запись данных (-1, если не достигнута)
+    private int cutOffRow = -1;
+    // количество строк, время подготовки и записи строк текущей порции, переданные в БД данные на начало порции
+    private int batchRowCount;
+    private long encodeNanos;
+    private long writeNanos;
+    private long batchBytesSent;
+
+    StreamingTableWriter(DatabaseWriter writer,
+                         StreamingBookReader streamingReader,
+                         PostgresQueryService queryService,
+                         QueryPropertyHolder holder,
+                         TableMetrics metrics) {
+        this.writer = writer;
+        this.streamingReader = streamingReader;
+        this.targetService = queryService;
+        this.queryService = queryService;
+        this.holder = holder;
+        this.metrics = metrics;
+        QueryPropertyHolder.DataColumnInfo columnInfo = holder.getDataColumnInfo().orElse(null);
+        columnFrom = Objects.nonNull(columnInfo) ? Optional.of(columnInfo.getFrom()) : Optional.empty();
+        columnTo = Objects.nonNull(columnInfo) ? Optional.of(columnInfo.getTo()) : Optional.empty();
+        nextRowIndex = holder.getFirstDataRow();
+        mode = writer.getInsertMode(holder.getDbTableName());
+        batchSizer = writer.createBatchSizer();
+    }
+
+    @Override
+    public boolean handleRow(StreamingBookReader.StreamingRow row) {
+        int rowIndex = row.getIndex();
+        if (rowIndex == holder.getHeaderRow())
+            headerRow = row;
+
+        if (rowIndex < holder.getFirstDataRow())
+            return true;
+
+        // выход за индекс последней строки данных - достигнут конец данных
+        if (rowIndex > holder.getLastDataRow().orElse(Integer.MAX_VALUE))
+            return false;
+
+        if (Objects.isNull(postgresTypes))
+            prepareTable(row);
+
+        // отсутствующие строки (пропуск в данных листа) не записываются, но входят в длину пропуска
+        if (rowIndex > nextRowIndex && gapFirstRow < 0)
+            gapFirstRow = nextRowIndex;
+        nextRowIndex = rowIndex + 1;
+        boolean hasValues = DataExtentAnalyzer.hasValues(row, plan);
+        if (!hasValues && gapFirstRow < 0)
+            gapFirstRow = rowIndex;
+        // длина пропуска: строки от его начала до текущей строки (включительно, если она пустая)
+        int gapLength = gapFirstRow < 0 ? 0 : (hasValues ? rowIndex : rowIndex + 1) - gapFirstRow;
+        if (cutOffRow < 0 && gapLength >= writer.getEmptyRowLimit()) {
+            // чтение продолжается до конца листа, чтобы предупредить о значениях после пропуска
+            cutOffRow = gapFirstRow;
+            pendingEmptyRows.clear();
+        }
+        // оформленные, но пустые строки в конце листа не записываются
+        if (!hasValues) {
+            if (cutOffRow < 0)
+                pendingEmptyRows.add(row);
+            return true;
+        }
+
+        if (cutOffRow >= 0) {
+            DatabaseWriter.logInfo(("Внимание: данные листа \"%s\" записаны до строки %d (пустых строк подряд не менее %d); "
+                    + "значения в строке %d и далее не записаны в таблицу %s")
+                    .formatted(holder.getSheetName(), cutOffRow, writer.getEmptyRowLimit(), rowIndex, holder.getDbTableName()));
+            return false;
+        }
+
+        pendingEmptyRows.forEach(this::handleDataRow);
+        pendingEmptyRows.clear();
+        gapFirstRow = -1;
+        handleDataRow(row);
+        return true;
+    }
+
+    private void handleDataRow(StreamingBookReader.StreamingRow row) throws RuntimeException {
+        int rowIndex = row.getIndex();
+        // строки, записанные при прерванной загрузке, пропускаются
+        if (rowIndex < committer.getStartRow())
+            return;
+
+        if (Objects.nonNull(rowWriter)) {
+            writeRow(row);
+            return;
+        }
+
+        if (batch.isEmpty())
+            batchFirstRow = rowIndex;
+        batchLastRow = rowIndex;
+        int position = batch.getRowCount();
+        if (position == batchRowIndexes.length)
+            batchRowIndexes = Arrays.copyOf(batchRowIndexes, 2 * position);
+        batchRowIndexes[position] = rowIndex;
+        long started = System.nanoTime();
+        streamingReader.appendPostgresRowValues(batch, row, plan);
+        encodeNanos += System.nanoTime() - started;
+
+        if (batch.getRowCount() >= batchSizer.getBatchRows())
+            flush();
+    }
+
+    private void writeRow(StreamingBookReader.StreamingRow row) throws RuntimeException {
+        try {
+            long started = System.nanoTime();
+            Object[] values = streamingReader.toPostgresRowObjects(row, plan);
+            long encoded = System.nanoTime();
+            rowWriter.writeRow(values);
+            encodeNanos += encoded - started;
+            writeNanos += System.nanoTime() - encoded;
+            batchRowCount++;
+
+            if (batchRowCount < batchSizer.getBatchRows())
+                return;
+            if (batchSizer.isAdaptive()) {
+                long flushed = System.nanoTime();
+                rowWriter.flush();
+                writeNanos += System.nanoTime() - flushed;
+            }
+        } catch (SQLException e) {
+            metrics.batchFailed();
+            throw new RuntimeException("Не удалось записать данные в БД (%s)".formatted(mode), e);
+        }
+        DatabaseWriter.logInfo("Передано в БД строк: %d".formatted(rowWriter.getRowCount()));
+        committer.commit(rowWriter, row.getIndex());
+        completeBatch();
+    }
+
+    // Передает в метрики и batchSizer время и объем порции, записанной построчно
+    private void completeBatch() {
+        long bytes = rowWriter.getBytesSent() - batchBytesSent;
+        metrics.recordEncode(encodeNanos);
+        metrics.recordWrite(writeNanos);
+        metrics.addRows(batchRowCount);
+        metrics.addBytes(bytes);
+        batchSizer.onBatchWritten(batchRowCount, bytes, writeNanos);
+        batchRowCount = 0;
+        encodeNanos = 0;
+        writeNanos = 0;
+        batchBytesSent = rowWriter.getBytesSent();
+    }
+
+    // Формирует типы данных по первой строке данных и готовит таблицу БД к наполнению
+    private void prepareTable(StreamingBookReader.StreamingRow firstDataRow) throws RuntimeException {
+        DatabaseWriter.logInfo("Формирование типов данных Postgres");
+        postgresTypes = metrics.recordTypeInference(() -> holder.getDbFieldNames().isEmpty()
+                ? (Objects.nonNull(headerRow)
+                    ? streamingReader.getPostgresTypesByHeaderRow(headerRow, firstDataRow, columnFrom, columnTo)
+                    : Map.of())
+                : streamingReader.getPostgresTypesByFieldNames(firstDataRow, holder.getDbFieldNames(), columnFrom, columnTo));
+        if (postgresTypes.isEmpty())
+            throw new RuntimeException("Не удалось сформировать список типов данных");
+        DatabaseWriter.logInfo("Типы данных Postgres успешно сформированы:\n" + postgresTypes);
+
+        plan = ColumnPlan.compile(postgresTypes, holder.getDataColumnInfo());
+
+        writer.tryCreateTable(targetService, postgresTypes);
+        committer = writer.createCommitter(targetService, holder);
+        LoadStrategy loadStrategy = writer.getLoadStrategy();
+        if (writer.isOverwrite() && LoadStrategy.DIRECT == loadStrategy && !committer.isResumed())
+            writer.truncateTable(targetService);
+        if (LoadStrategy.STAGING == loadStrategy) {
+            queryService = writer.createStagingTable(targetService, holder.getDbTableName());
+            staged = true;
+        }
+
+        if (InsertMode.VALUES == mode && LoadStrategy.DELTA != loadStrategy) {
+            quarantine = writer.createQuarantine(queryService, holder, plan);
+            return;
+        }
+        try {
+            rowWriter = writer.openRowWriter(queryService, holder.getDbTableName(), plan, mode, batchSizer);
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось начать запись данных в БД (%s)".formatted(mode), e);
+        }
+    }
+
+    private void flush() throws RuntimeException {
+        String indexRangeString = "[%d, %d]".formatted(batchFirstRow, batchLastRow);
+        DatabaseWriter.logInfo("Запись порции данных %s в БД".formatted(indexRangeString));
+        String values = batch.build();
+        long started = System.nanoTime();
+        int rejected = 0;
+        boolean inserted = true;
+        if (Objects.isNull(quarantine)) {
+            inserted = queryService.insertData(plan.getFieldNames(), values);
+        } else {
+            // части порции берутся из буфера значений
+            rejected = writer.insertBatch(quarantine, Arrays.copyOf(batchRowIndexes, batch.getRowCount()), values,
+                    batch::build, metrics);
+        }
+        long writeNanos = System.nanoTime() - started;
+        metrics.recordWrite(writeNanos);
+        if (!inserted) {
+            metrics.batchFailed();
+            throw new RuntimeException("Не удалось записать порцию данных %s в БД".formatted(indexRangeString));
+        }
+
+        metrics.recordEncode(encodeNanos);
+        encodeNanos = 0;
+        int rowCount = batch.getRowCount();
+        batch.reset();
+        committer.commit(null, batchLastRow);
+        long bytes = PostgresValuesEncoder.utf8Length(values);
+        metrics.addRows(rowCount - rejected);
+        metrics.addBytes(bytes);
+        batchSizer.onBatchWritten(rowCount, bytes, writeNanos);
+    }
+
+    void finish() throws RuntimeException {
+        if (Objects.isNull(postgresTypes))
+            throw new RuntimeException("Не удалось сформировать список типов данных");
+
+        if (Objects.nonNull(rowWriter)) {
+            try {
+                writer.logWriteResult(rowWriter, rowWriter.finish());
+                completeBatch();
+            } catch (SQLException e) {
+                throw new RuntimeException("Не удалось записать данные в БД (%s)".formatted(mode), e);
+            }
+        } else {
+            if (!batch.isEmpty())
+                flush();
+            DatabaseWriter.logInfo("Данные успешно записаны в БД");
+        }
+        if (staged) {
+            staged = false;
+            writer.applyStagingTable(targetService, queryService, plan);
+        }
+        committer.complete();
+    }
+
+    // Освобождает ресурсы записи (незавершенная передача COPY прерывается, промежуточная таблица удаляется)
+    @Override
+    public void close() throws RuntimeException {
+        if (Objects.nonNull(rowWriter)) {
+            try {
+                rowWriter.close();
+            } catch (SQLException e) {
+                DatabaseWriter.logInfo("Не удалось освободить ресурсы записи в БД: " + e.getMessage());
+            }
+        }
+        if (Objects.nonNull(committer))
+            committer.close();
+        if (staged)
+            queryService.dropTable(queryService.getTableName());
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.excelparser.utils.excel;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Метрики записи листа в таблицу БД (Micrometer) с тегами sheet и table
+class TableMetrics {
+    private final Timer typeInference;
+    private final Timer batchEncode;
+    private final Timer batchWrite;
+    private final Timer tableWrite;
+    private final Counter rows;
+    private final Counter bytes;
+    private final Counter failedBatches;
+    private final Counter rejectedRows;
+
+    TableMetrics(MeterRegistry registry, QueryPropertyHolder holder) {
+        Tags tags = Tags.of("sheet", holder.getSheetName(), "table", holder.getDbTableName());
+        typeInference = Timer.builder("excel.type.inference")
+                .description("Формирование типов данных полей")
+                .tags(tags)
+                .register(registry);
+        batchEncode = Timer.builder("excel.batch.encode")
+                .description("Подготовка значений порции данных")
+                .tags(tags)
+                .register(registry);
+        batchWrite = Timer.builder("excel.batch.write")
+                .description("Запись порции данных в БД")
+                .tags(tags)
+                .register(registry);
+        tableWrite = Timer.builder("excel.table.write")
+                .description("Запись листа в таблицу БД")
+                .tags(tags)
+                .register(registry);
+        rows = Counter.builder("excel.rows.written")
+                .description("Записанные строки")
+                .tags(tags)
+                .register(registry);
+        bytes = Counter.builder("excel.bytes.sent")
+                .description("Переданные в БД данные")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(registry);
+        failedBatches = Counter.builder("excel.batches.failed")
+                .description("Порции данных, которые не удалось записать")
+                .tags(tags)
+                .register(registry);
+        rejectedRows = Counter.builder("excel.rows.rejected")
+                .description("Строки, отклоненные БД и сохраненные в таблице отклоненных строк")
+                .tags(tags)
+                .register(registry);
+    }
+
+    <T> T recordTypeInference(Supplier<T> supplier) {
+        return typeInference.record(supplier);
+    }
+
+    <T> T recordEncode(Supplier<T> supplier) {
+        return batchEncode.record(supplier);
+    }
+
+    void recordTable(Runnable runnable) {
+        tableWrite.record(runnable);
+    }
+
+    void recordTable(long nanos) {
+        tableWrite.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Время порции, обработанной построчно (суммарное время обработки ее строк)
+    void recordEncode(long nanos) {
+        batchEncode.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordWrite(long nanos) {
+        batchWrite.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void addRows(long count) {
+        rows.increment(count);
+    }
+
+    void addBytes(long count) {
+        bytes.increment(count);
+    }
+
+    void batchFailed() {
+        failedBatches.increment();
+    }
+
+    void addRejectedRows(long count) {
+        rejectedRows.increment(count);
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.example.excelparser.utils.excel;
+
+import lombok.Getter;
+
+import java.util.Map;
+
+// Ошибки записи отдельных таблиц при параллельной обработке листов книги
+@Getter
+public class TableWriteException extends RuntimeException {
+    // имя таблицы -> ошибка записи
+    private final Map<String, RuntimeException> errors;
+
+    public TableWriteException(Map<String, RuntimeException> errors) {
+        super("Не удалось записать таблицы БД: " + String.join(", ", errors.keySet()));
+        this.errors = Map.copyOf(errors);
+        errors.values().forEach(this::addSuppressed);
+    }
+}
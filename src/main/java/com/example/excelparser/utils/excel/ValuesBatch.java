@@ -0,0 +1,25 @@
+package com.example.excelparser.utils.excel;
+
+import lombok.Value;
+
+// Строки значений порции для INSERT ... VALUES с индексами строк листа и границами каждой строки в тексте
+@Value
+public class ValuesBatch {
+    String values;
+    int[] rowIndexes;
+    // начало и конец строки i в values: rowBounds[2 * i], rowBounds[2 * i + 1]
+    int[] rowBounds;
+
+    public int getRowCount() {
+        return rowIndexes.length;
+    }
+
+    public boolean isEmpty() {
+        return rowIndexes.length == 0;
+    }
+
+    // Строки значений порции с rowFrom по rowTo включительно (номера строк в порции, начиная с 0)
+    public String getValues(int rowFrom, int rowTo) {
+        return values.substring(rowBounds[2 * rowFrom], rowBounds[2 * rowTo + 1]);
+    }
+}
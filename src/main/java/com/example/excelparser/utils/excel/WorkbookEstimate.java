@@ -0,0 +1,181 @@
+package com.example.excelparser.utils.excel;
+
+import lombok.NonNull;
+import lombok.Value;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.XMLHelper;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Оценка памяти для чтения книги по каталогу архива, dimension листов и заголовку sharedStrings.xml
+@Value
+public class WorkbookEstimate {
+    private static final String WORKSHEETS_PREFIX = "xl/worksheets/";
+    private static final String SHARED_STRINGS_PART = "xl/sharedStrings.xml";
+    private static final String STYLES_PART = "xl/styles.xml";
+    // объем DOM-модели на одну ячейку (XSSFCell и CTCell)
+    private static final long DOM_BYTES_PER_CELL = 512;
+    // объем DOM-модели на одну общую строку (CTRst) сверх ее текста
+    private static final long DOM_BYTES_PER_SHARED_STRING = 200;
+    // объем строки в списке ReadOnlySharedStringsTable сверх ее текста
+    private static final long BYTES_PER_SHARED_STRING = 56;
+    // кратность объема разобранных стилей к размеру styles.xml
+    private static final long STYLES_EXPANSION = 5;
+    // постоянная часть потокового чтения (буферы разбора, LRU-кэш общих строк, порции данных)
+    private static final long STREAMING_BASE_BYTES = 32L * 1024 * 1024;
+    // наименьший и средний размер разметки ячейки (<c r="A1" t="s"><v>1</v></c>)
+    private static final long MIN_CELL_XML_BYTES = 16;
+    private static final long AVG_CELL_XML_BYTES = 32;
+    // разметка частей книги сжимается обычно в 10-20 раз; используется, если размер части в архиве не указан
+    private static final long XML_COMPRESSION_RATIO = 20;
+
+    long fileSize;
+    List<SheetEstimate> sheets;
+    long cellCount;
+    long sharedStringCount;
+    long sharedStringsBytes;
+    long stylesBytes;
+
+    @Value
+    public static class SheetEstimate {
+        // имя части архива (xl/worksheets/sheetN.xml)
+        String partName;
+        // диапазон из записи dimension (null, если записи нет)
+        String dimension;
+        long xmlBytes;
+        long cellCount;
+    }
+
+    // Разбирает центральный каталог архива и заголовки частей книги
+    public static WorkbookEstimate of(@NonNull Path path) throws IOException {
+        var sheets = new ArrayList<SheetEstimate>();
+        long cellCount = 0;
+        long sharedStringCount = 0;
+        long sharedStringsBytes = 0;
+        long stylesBytes = 0;
+        long fileSize = Files.size(path);
+        try (var zipFile = new ZipFile(path.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                long size = getUncompressedSize(entry, fileSize);
+                if (isWorksheet(name)) {
+                    SheetEstimate sheet = estimateSheet(zipFile, entry, size);
+                    sheets.add(sheet);
+                    cellCount += sheet.getCellCount();
+                } else if (SHARED_STRINGS_PART.equals(name)) {
+                    sharedStringsBytes = size;
+                    sharedStringCount = readSharedStringCount(zipFile, entry);
+                } else if (STYLES_PART.equals(name)) {
+                    stylesBytes = size;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Не удалось прочитать структуру книги", e);
+        }
+        return new WorkbookEstimate(fileSize, List.copyOf(sheets), cellCount, sharedStringCount,
+                sharedStringsBytes, stylesBytes);
+    }
+
+    // Объем кучи для DOM-модели XSSFWorkbook
+    public long getDomHeapBytes() {
+        return cellCount * DOM_BYTES_PER_CELL
+                + sharedStringCount * DOM_BYTES_PER_SHARED_STRING + sharedStringsBytes * 2
+                + stylesBytes * STYLES_EXPANSION;
+    }
+
+    // Объем кучи для потокового чтения (общие строки в памяти или во временном файле)
+    public long getStreamingHeapBytes(@NonNull StreamingBookReader.SharedStringsStorage sharedStringsStorage) {
+        long sharedStrings = (StreamingBookReader.SharedStringsStorage.MEMORY == sharedStringsStorage)
+                // текст строки в UTF-16 занимает не более двух байт на байт разметки
+                ? sharedStringCount * BYTES_PER_SHARED_STRING + sharedStringsBytes * 2
+                // в памяти только смещения строк во временном файле
+                : sharedStringCount * Long.BYTES;
+        return STREAMING_BASE_BYTES + sharedStrings + stylesBytes * STYLES_EXPANSION;
+    }
+
+    // Размер части после распаковки; если он не указан в каталоге архива (-1), оценивается с запасом
+    // по сжатому размеру части (или по размеру файла, если неизвестен и он)
+    private static long getUncompressedSize(ZipEntry entry, long fileSize) {
+        if (entry.getSize() >= 0)
+            return entry.getSize();
+        long compressedSize = (entry.getCompressedSize() >= 0) ? entry.getCompressedSize() : fileSize;
+        return compressedSize * XML_COMPRESSION_RATIO;
+    }
+
+    private static boolean isWorksheet(String name) {
+        return name.startsWith(WORKSHEETS_PREFIX)
+                && name.indexOf('/', WORKSHEETS_PREFIX.length()) < 0
+                && name.endsWith(".xml");
+    }
+
+    private static SheetEstimate estimateSheet(ZipFile zipFile, ZipEntry entry, long xmlBytes) throws IOException, XMLStreamException {
+        String dimension = readDimension(zipFile, entry);
+        // dimension может охватывать только оформленные строки или отсутствовать,
+        // поэтому количество ячеек ограничивается размером разметки листа
+        long cellCount = xmlBytes / AVG_CELL_XML_BYTES;
+        if (Objects.nonNull(dimension)) {
+            CellRangeAddress range = CellRangeAddress.valueOf(dimension);
+            // getNumberOfCells переполняется для диапазонов во весь лист
+            long rangeCells = (range.getLastRow() - range.getFirstRow() + 1L) * (range.getLastColumn() - range.getFirstColumn() + 1L);
+            cellCount = Math.min(rangeCells, xmlBytes / MIN_CELL_XML_BYTES);
+        }
+        return new SheetEstimate(entry.getName(), dimension, xmlBytes, cellCount);
+    }
+
+    // Запись <dimension ref="A1:K100"/> находится до данных листа, поэтому читается только начало части
+    private static String readDimension(ZipFile zipFile, ZipEntry entry) throws IOException, XMLStreamException {
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            XMLStreamReader reader = XMLHelper.newXMLInputFactory().createXMLStreamReader(input);
+            try {
+                while (reader.hasNext()) {
+                    if (XMLStreamConstants.START_ELEMENT != reader.next())
+                        continue;
+
+                    String localName = reader.getLocalName();
+                    if ("dimension".equals(localName))
+                        return reader.getAttributeValue(null, "ref");
+                    if ("sheetData".equals(localName))
+                        return null;
+                }
+                return null;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    // Количество уникальных строк из атрибутов корневого элемента <sst count="..." uniqueCount="...">
+    private static long readSharedStringCount(ZipFile zipFile, ZipEntry entry) throws IOException, XMLStreamException {
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            XMLStreamReader reader = XMLHelper.newXMLInputFactory().createXMLStreamReader(input);
+            try {
+                while (reader.hasNext()) {
+                    if (XMLStreamConstants.START_ELEMENT != reader.next())
+                        continue;
+
+                    String count = reader.getAttributeValue(null, "uniqueCount");
+                    if (Objects.isNull(count))
+                        count = reader.getAttributeValue(null, "count");
+                    return Objects.nonNull(count) ? Long.parseLong(count) : 0;
+                }
+                return 0;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.excelparser.utils.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PostgresQueryServiceTest {
+
+    private static boolean isDataError(String sqlState) {
+        return PostgresQueryService.isDataError(new SQLException("error", sqlState));
+    }
+
+    @Test
+    void valueAndConstraintErrorsAreDataErrors() {
+        // invalid_text_representation, numeric_value_out_of_range, datetime_field_overflow
+        assertTrue(isDataError("22P02"));
+        assertTrue(isDataError("22003"));
+        assertTrue(isDataError("22008"));
+        // not_null_violation, unique_violation
+        assertTrue(isDataError("23502"));
+        assertTrue(isDataError("23505"));
+        // datatype_mismatch
+        assertTrue(isDataError("42804"));
+    }
+
+    @Test
+    void otherErrorsAreNotDataErrors() {
+        // undefined_table, undefined_column, insufficient_privilege, syntax_error
+        assertFalse(isDataError("42P01"));
+        assertFalse(isDataError("42703"));
+        assertFalse(isDataError("42501"));
+        assertFalse(isDataError("42601"));
+        // serialization_failure, deadlock_detected
+        assertFalse(isDataError("40001"));
+        assertFalse(isDataError("40P01"));
+        // connection_failure, admin_shutdown
+        assertFalse(isDataError("08006"));
+        assertFalse(isDataError("57P01"));
+        assertFalse(isDataError(null));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.excelparser.utils.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PostgresValuesEncoderTest {
+
+    private static String encodeRow(Object... values) {
+        var encoder = new PostgresValuesEncoder(16);
+        encoder.beginRow();
+        for (Object value : values)
+            encoder.appendValue(value);
+        encoder.endRow();
+        return encoder.build();
+    }
+
+    @Test
+    void encodesTypedValues() {
+        assertEquals("(null, '1.5', 'true', '2024-03-01', 'abc')",
+                encodeRow(null, 1.5, true, LocalDateTime.of(2024, 3, 1, 10, 30), "abc"));
+    }
+
+    @Test
+    void doublesSingleQuotes() {
+        assertEquals("('O''Brien')", encodeRow("O'Brien"));
+        assertEquals("('''')", encodeRow("'"));
+        assertEquals("('a''''b')", encodeRow("a''b"));
+    }
+
+    @Test
+    void quotesInSeveralCellsDoNotPairUp() {
+        assertEquals("('it''s', '), (''x')", encodeRow("it's", "), ('x"));
+    }
+
+    @Test
+    void backslashesAreWrittenAsIs() {
+        assertEquals("('C:\\temp\\')", encodeRow("C:\\temp\\"));
+        assertEquals("('\\''')", encodeRow("\\'"));
+    }
+
+    @Test
+    void separatesRows() {
+        var encoder = new PostgresValuesEncoder(16);
+        for (int i = 0; i < 3; i++) {
+            encoder.beginRow();
+            encoder.appendDouble(i);
+            encoder.appendText("r" + i);
+            encoder.endRow();
+        }
+        assertEquals(3, encoder.getRowCount());
+        assertEquals("('0.0', 'r0'), ('1.0', 'r1'), ('2.0', 'r2')", encoder.build());
+        assertEquals("('1.0', 'r1'), ('2.0', 'r2')", encoder.build(1, 2));
+        assertEquals("('0.0', 'r0')", encoder.build(0, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> encoder.build(1, 3));
+    }
+
+    @Test
+    void resetKeepsEncoderReusable() {
+        var encoder = new PostgresValuesEncoder(16);
+        encoder.beginRow();
+        encoder.appendText("first");
+        encoder.endRow();
+        encoder.reset();
+        assertTrue(encoder.isEmpty());
+
+        encoder.beginRow();
+        encoder.appendNull();
+        encoder.endRow();
+        assertEquals("(null)", encoder.build());
+    }
+
+    @Test
+    void padsDateParts() {
+        assertEquals("('0099-01-02')", encodeRow(LocalDateTime.of(99, 1, 2, 0, 0)));
+    }
+
+    @Test
+    void utf8LengthCountsMultibyteCharacters() {
+        assertEquals(3, PostgresValuesEncoder.utf8Length("abc"));
+        assertEquals(4, PostgresValuesEncoder.utf8Length("ая"));
+        assertEquals(3, PostgresValuesEncoder.utf8Length("€"));
+        assertEquals(4, PostgresValuesEncoder.utf8Length("😀"));
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.excelparser.utils.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowFingerprintTest {
+    private final RowFingerprint fingerprint = new RowFingerprint();
+
+    @Test
+    void sameValuesGiveSameFingerprint() {
+        Object[] row = {1.5, "abc", null, true, LocalDateTime.of(2024, 3, 1, 0, 0)};
+        String first = fingerprint.of(row);
+
+        assertEquals(first, new RowFingerprint().of(row.clone()));
+        assertEquals(first, fingerprint.of(row));
+        assertTrue(first.matches("[0-9a-f]{32}"));
+    }
+
+    @Test
+    void typeIsPartOfFingerprint() {
+        assertNotEquals(fingerprint.of(new Object[]{1.0}), fingerprint.of(new Object[]{"1.0"}));
+        assertNotEquals(fingerprint.of(new Object[]{true}), fingerprint.of(new Object[]{"true"}));
+        assertNotEquals(fingerprint.of(new Object[]{null}), fingerprint.of(new Object[]{""}));
+    }
+
+    @Test
+    void valueBoundariesArePartOfFingerprint() {
+        assertNotEquals(fingerprint.of(new Object[]{"ab", "c"}), fingerprint.of(new Object[]{"a", "bc"}));
+        assertNotEquals(fingerprint.of(new Object[]{"a", null}), fingerprint.of(new Object[]{null, "a"}));
+    }
+
+    @Test
+    void dateIgnoresTimeOfDay() {
+        assertEquals(fingerprint.of(new Object[]{LocalDateTime.of(2024, 3, 1, 0, 0)}),
+                fingerprint.of(new Object[]{LocalDateTime.of(2024, 3, 1, 12, 30)}));
+    }
+}
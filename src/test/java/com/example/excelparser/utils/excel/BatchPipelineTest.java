@@ -0,0 +1,104 @@
+package com.example.excelparser.utils.excel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchPipelineTest {
+
+    @Test
+    void batchesAreConsumedInProducedOrder() {
+        var consumed = new ArrayList<Integer>();
+        new BatchPipeline<Integer>(4).run(sink -> IntStream.range(0, 1000).forEach(sink::accept), consumed::add);
+
+        assertEquals(IntStream.range(0, 1000).boxed().toList(), consumed);
+    }
+
+    @Test
+    void producerRunsInReaderThread() {
+        var producerThread = new ArrayList<String>();
+        var consumerThread = new ArrayList<String>();
+        new BatchPipeline<Integer>(1).run(sink -> {
+            producerThread.add(Thread.currentThread().getName());
+            sink.accept(1);
+        }, batch -> consumerThread.add(Thread.currentThread().getName()));
+
+        assertEquals(List.of("excel-parser-reader"), producerThread);
+        assertEquals(List.of(Thread.currentThread().getName()), consumerThread);
+    }
+
+    @Test
+    void queueDepthLimitsProducerLead() {
+        int queueDepth = 2;
+        var produced = new AtomicInteger();
+        var consumed = new AtomicInteger();
+        var maxLead = new AtomicInteger();
+        new BatchPipeline<Integer>(queueDepth).run(sink -> {
+            for (int i = 0; i < 50; i++) {
+                maxLead.accumulateAndGet(produced.incrementAndGet() - consumed.get(), Math::max);
+                sink.accept(i);
+            }
+        }, batch -> {
+            consumed.incrementAndGet();
+            sleep(2);
+        });
+
+        // порции в очереди, порция, извлеченная этапом записи, и порция, ожидающая места в очереди
+        assertTrue(maxLead.get() <= queueDepth + 2, "lead " + maxLead.get());
+        assertEquals(50, consumed.get());
+    }
+
+    @Test
+    void producerErrorIsRethrownAfterProducedBatches() {
+        var error = new IllegalStateException("read");
+        var consumed = new ArrayList<Integer>();
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> new BatchPipeline<Integer>(4).run(sink -> {
+            sink.accept(1);
+            sink.accept(2);
+            throw error;
+        }, consumed::add));
+
+        assertSame(error, thrown);
+        assertEquals(List.of(1, 2), consumed);
+    }
+
+    @Test
+    void consumerErrorStopsProducer() {
+        var error = new IllegalStateException("write");
+        var produced = new AtomicInteger();
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> new BatchPipeline<Integer>(2).run(sink -> {
+            // без остановки этап чтения не завершается
+            while (true)
+                sink.accept(produced.incrementAndGet());
+        }, batch -> {
+            if (batch == 3)
+                throw error;
+        }));
+
+        assertSame(error, thrown);
+        int producedAfterStop = produced.get();
+        sleep(20);
+        assertEquals(producedAfterStop, produced.get());
+    }
+
+    @Test
+    void queueDepthMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchPipeline<Integer>(0));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
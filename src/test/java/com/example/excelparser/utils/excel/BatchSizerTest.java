@@ -0,0 +1,89 @@
+package com.example.excelparser.utils.excel;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchSizerTest {
+    private static final long MILLIS = 1_000_000;
+    private static final Duration TARGET_LATENCY = Duration.ofMillis(500);
+
+    private static BatchSizer adaptive(int initialRows) {
+        return BatchSizer.adaptive(initialRows, 10, 10_000, Long.MAX_VALUE, TARGET_LATENCY);
+    }
+
+    @Test
+    void fixedSizeDoesNotChange() {
+        BatchSizer sizer = BatchSizer.fixed(500);
+        sizer.onBatchWritten(500, 1_000_000, MILLIS);
+
+        assertFalse(sizer.isAdaptive());
+        assertEquals(500, sizer.getBatchRows());
+        assertEquals(500, sizer.getMaxRows());
+    }
+
+    @Test
+    void initialSizeIsClamped() {
+        assertTrue(adaptive(100).isAdaptive());
+        assertEquals(10, adaptive(1).getBatchRows());
+        assertEquals(10_000, adaptive(50_000).getBatchRows());
+    }
+
+    @Test
+    void sizeFollowsWriteLatency() {
+        BatchSizer sizer = adaptive(100);
+        sizer.onBatchWritten(100, 0, 400 * MILLIS);
+        assertEquals(125, sizer.getBatchRows());
+
+        sizer.onBatchWritten(125, 0, 1000 * MILLIS);
+        assertEquals(62, sizer.getBatchRows());
+    }
+
+    @Test
+    void changePerBatchIsLimited() {
+        BatchSizer sizer = adaptive(100);
+        sizer.onBatchWritten(100, 0, MILLIS);
+        assertEquals(200, sizer.getBatchRows());
+
+        // время записи не измерено
+        sizer.onBatchWritten(200, 0, 0);
+        assertEquals(400, sizer.getBatchRows());
+
+        sizer.onBatchWritten(400, 0, 60_000 * MILLIS);
+        assertEquals(200, sizer.getBatchRows());
+    }
+
+    @Test
+    void sizeStaysWithinBounds() {
+        BatchSizer sizer = adaptive(8_000);
+        sizer.onBatchWritten(8_000, 0, MILLIS);
+        assertEquals(10_000, sizer.getBatchRows());
+
+        sizer = adaptive(15);
+        sizer.onBatchWritten(15, 0, 60_000 * MILLIS);
+        assertEquals(10, sizer.getBatchRows());
+    }
+
+    @Test
+    void batchBytesAreLimitedByAverageRowSize() {
+        BatchSizer sizer = BatchSizer.adaptive(100, 10, 100_000, 1_000_000, TARGET_LATENCY);
+        // 1000 байт на строку
+        sizer.onBatchWritten(100, 100_000, 500 * MILLIS);
+        assertEquals(100, sizer.getBatchRows());
+
+        // 3000 байт на строку: средний размер строки 2000 байт, порция - не более 500 строк
+        sizer.onBatchWritten(1_000, 3_000_000, MILLIS);
+        assertEquals(500, sizer.getBatchRows());
+    }
+
+    @Test
+    void emptyBatchIsIgnored() {
+        BatchSizer sizer = adaptive(100);
+        sizer.onBatchWritten(0, 0, MILLIS);
+        assertEquals(100, sizer.getBatchRows());
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.excelparser.utils.excel;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DateFormatCacheTest {
+    private XSSFWorkbook workbook;
+    private int dateStyle;
+    private int numberStyle;
+    // количество обращений к стилям книги
+    private final AtomicInteger lookups = new AtomicInteger();
+    private DateFormatCache cache;
+
+    @BeforeEach
+    void setUp() {
+        workbook = new XSSFWorkbook();
+        dateStyle = createStyle("dd.mm.yyyy");
+        numberStyle = createStyle("0.00");
+        cache = new DateFormatCache(workbook.getNumCellStyles(), index -> {
+            lookups.incrementAndGet();
+            return workbook.getCellStyleAt(index);
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        workbook.close();
+    }
+
+    private int createStyle(String format) {
+        CellStyle style = workbook.createCellStyle();
+        style.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat(format));
+        return Short.toUnsignedInt(style.getIndex());
+    }
+
+    @Test
+    void formatIsClassifiedOncePerStyle() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(cache.isDateFormat(dateStyle));
+            assertFalse(cache.isDateFormat(numberStyle));
+        }
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    void styleOutsideCacheIsClassifiedEachTime() {
+        var small = new DateFormatCache(0, index -> {
+            lookups.incrementAndGet();
+            return workbook.getCellStyleAt(index);
+        });
+        assertTrue(small.isDateFormat(dateStyle));
+        assertTrue(small.isDateFormat(dateStyle));
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    void missingStyleIsNotDate() {
+        assertFalse(new DateFormatCache(4, index -> null).isDateFormat(1));
+    }
+
+    @Test
+    void dateRequiresValidExcelDate() {
+        assertTrue(cache.isDateFormatted(dateStyle, 45352.5));
+        assertFalse(cache.isDateFormatted(dateStyle, -1));
+        assertFalse(cache.isDateFormatted(numberStyle, 45352.5));
+    }
+
+    @Test
+    void numericCellWithDateStyleIsDate() {
+        Cell cell = workbook.createSheet().createRow(0).createCell(0);
+        cell.setCellValue(45352.5);
+        cell.setCellStyle(workbook.getCellStyleAt(dateStyle));
+        assertTrue(cache.isDateFormatted(cell));
+
+        cell.setCellStyle(workbook.getCellStyleAt(numberStyle));
+        assertFalse(cache.isDateFormatted(cell));
+    }
+}
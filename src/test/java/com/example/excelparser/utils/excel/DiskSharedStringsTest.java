@@ -0,0 +1,90 @@
+package com.example.excelparser.utils.excel;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DiskSharedStringsTest {
+
+    private static InputStream sst(String count, String items) {
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                <sst xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main" %s>%s</sst>
+                """.formatted(count, items);
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String getString(DiskSharedStrings strings, int idx) {
+        return strings.getItemAt(idx).getString();
+    }
+
+    @Test
+    void readsPlainRichAndEmptyStrings() throws IOException {
+        try (var strings = new DiskSharedStrings(sst("count=\"7\" uniqueCount=\"4\"", """
+                <si><t>alpha</t></si>
+                <si><r><rPr><b/></rPr><t>Рус</t></r><r><t xml:space="preserve">ский </t></r></si>
+                <si><t/></si>
+                <si><t>漢字</t><rPh sb="0" eb="2"><t>かんじ</t></rPh></si>
+                """), 16)) {
+            assertEquals(7, strings.getCount());
+            assertEquals(4, strings.getUniqueCount());
+            assertEquals("alpha", getString(strings, 0));
+            assertEquals("Русский ", getString(strings, 1));
+            assertEquals("", getString(strings, 2));
+            assertEquals("漢字", getString(strings, 3));
+        }
+    }
+
+    @Test
+    void manyStringsWithSmallCache() throws IOException {
+        int stringCount = 5000;
+        String items = IntStream.range(0, stringCount)
+                .mapToObj(i -> "<si><t>строка " + i + "</t></si>")
+                .collect(Collectors.joining());
+        try (var strings = new DiskSharedStrings(sst("", items), 2)) {
+            assertEquals(stringCount, strings.getUniqueCount());
+            assertEquals(0, strings.getCount());
+            for (int i : List.of(4999, 0, 1024, 4999, 1023, 0, 2500))
+                assertEquals("строка " + i, getString(strings, i));
+        }
+    }
+
+    @Test
+    void parallelReadsReturnOwnStrings() throws IOException {
+        String items = IntStream.range(0, 1000)
+                .mapToObj(i -> "<si><t>" + "x".repeat(i % 50) + i + "</t></si>")
+                .collect(Collectors.joining());
+        try (var strings = new DiskSharedStrings(sst("", items), 8)) {
+            List<String> expected = IntStream.range(0, 1000).mapToObj(i -> "x".repeat(i % 50) + i).toList();
+            List<String> actual = IntStream.range(0, 1000).parallel()
+                    .mapToObj(i -> getString(strings, i))
+                    .toList();
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void indexOutOfRange() throws IOException {
+        try (var strings = new DiskSharedStrings(sst("", "<si><t>a</t></si>"), 4)) {
+            assertThrows(IndexOutOfBoundsException.class, () -> strings.getItemAt(1));
+            assertThrows(IndexOutOfBoundsException.class, () -> strings.getItemAt(-1));
+        }
+    }
+
+    @Test
+    void emptyTable() throws IOException {
+        try (var strings = new DiskSharedStrings()) {
+            assertEquals(0, strings.getUniqueCount());
+            assertThrows(IndexOutOfBoundsException.class, () -> strings.getItemAt(0));
+        }
+    }
+}
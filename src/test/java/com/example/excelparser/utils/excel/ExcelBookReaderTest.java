@@ -0,0 +1,111 @@
+package com.example.excelparser.utils.excel;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExcelBookReaderTest {
+    private static final int LAST_ROW = 1500;
+    // строки пропуска отсутствуют в файле; пропуск длиннее порции
+    private static final int GAP_FROM = 1001;
+    private static final int GAP_TO = 1300;
+    private static final int BATCH_ROWS = 97;
+    private static final List<String> FIELD_TYPES = List.of("DOUBLE PRECISION", "TEXT");
+
+    @TempDir
+    static Path tempDir;
+    private static ExcelBookReader bookReader;
+    private static Sheet sheet;
+    private static ColumnPlan plan;
+
+    @BeforeAll
+    static void createBook() throws IOException {
+        Path path = tempDir.resolve("gap.xlsx");
+        try (var workbook = new XSSFWorkbook(); OutputStream output = Files.newOutputStream(path)) {
+            XSSFSheet gapSheet = workbook.createSheet("Пропуск");
+            Row header = gapSheet.createRow(0);
+            header.createCell(0).setCellValue("number");
+            header.createCell(1).setCellValue("text");
+            for (int i = 1; i <= LAST_ROW; i++) {
+                if (i >= GAP_FROM && i <= GAP_TO)
+                    continue;
+                Row row = gapSheet.createRow(i);
+                row.createCell(0).setCellValue(i);
+                row.createCell(1).setCellValue("row " + i);
+            }
+
+            // формула без сохраненного результата (книга не вычислялась перед записью)
+            XSSFSheet formulaSheet = workbook.createSheet("Формула");
+            formulaSheet.createRow(0).createCell(0).setCellFormula("1+1");
+            workbook.write(output);
+        }
+        bookReader = new ExcelBookReader(path, ExcelBookReader.FormulaStrategy.CACHED_VALUE);
+        sheet = bookReader.getWorkbook().getSheet("Пропуск");
+        plan = ColumnPlan.compile(FIELD_TYPES, 0, FIELD_TYPES.size() - 1);
+    }
+
+    @AfterAll
+    static void closeBook() throws IOException {
+        bookReader.close();
+    }
+
+    @Test
+    void dataExtentRunsPastGap() {
+        assertEquals(LAST_ROW,
+                DataExtentAnalyzer.findLastDataRow(bookReader.getSheetIndex(sheet), 1, sheet.getLastRowNum(), plan));
+    }
+
+    @Test
+    void valuesBatchesSkipGapLongerThanBatch() {
+        var expected = new ArrayList<String>();
+        for (int i = 1; i <= LAST_ROW; i++) {
+            Row row = sheet.getRow(i);
+            if (Objects.nonNull(row))
+                expected.add(bookReader.toPostgresRowValues(row, plan));
+        }
+
+        var batches = new ArrayList<String>();
+        int emptyBatches = 0;
+        for (int rowFrom = 1; rowFrom <= LAST_ROW; rowFrom += BATCH_ROWS) {
+            String values = bookReader
+                    .toPostgresTableValues(sheet, plan, rowFrom, Math.min(rowFrom + BATCH_ROWS - 1, LAST_ROW))
+                    .orElseThrow();
+            if (values.isEmpty())
+                emptyBatches++;
+            else
+                batches.add(values);
+        }
+
+        // порции, целиком попавшие в пропуск, пусты и не записываются; строки после пропуска сохраняются
+        assertTrue(emptyBatches > 0);
+        assertEquals(String.join(", ", expected), String.join(", ", batches));
+        assertTrue(batches.get(batches.size() - 1).contains("'row " + LAST_ROW + "'"));
+    }
+
+    @Test
+    void formulaWithoutCachedResultIsNull() {
+        Row row = bookReader.getWorkbook().getSheet("Формула").getRow(0);
+        ColumnPlan numberPlan = ColumnPlan.compile(List.of("DOUBLE PRECISION"), 0, 0);
+
+        assertEquals("TEXT", bookReader.toPostgresType(row.getCell(0)));
+        assertArrayEquals(new Object[]{null}, bookReader.toPostgresRowObjects(row, numberPlan));
+        assertEquals("(null)", bookReader.toPostgresRowValues(row, numberPlan));
+    }
+}
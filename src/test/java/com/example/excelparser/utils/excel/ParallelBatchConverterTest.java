@@ -0,0 +1,168 @@
+package com.example.excelparser.utils.excel;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParallelBatchConverterTest {
+    private static final int ROW_COUNT = 3000;
+    private static final int GAP_FROM = 1001;
+    private static final int GAP_TO = 1300;
+    private static final List<String> FIELD_TYPES =
+            List.of("DOUBLE PRECISION", "TEXT", "DOUBLE PRECISION", "TEXT", "DOUBLE PRECISION");
+
+    @TempDir
+    static Path tempDir;
+    private static ExcelBookReader bookReader;
+    private static Sheet sheet;
+    private static Sheet gapSheet;
+    private static ColumnPlan plan;
+
+    // Лист с формулами в каждой строке; результаты формул сохраняются в файле
+    @BeforeAll
+    static void createBook() throws IOException {
+        Path path = tempDir.resolve("formulas.xlsx");
+        try (var workbook = new XSSFWorkbook(); OutputStream output = Files.newOutputStream(path)) {
+            XSSFSheet formulaSheet = workbook.createSheet("Формулы");
+            Row header = formulaSheet.createRow(0);
+            for (int i = 0; i < FIELD_TYPES.size(); i++)
+                header.createCell(i).setCellValue("h" + i);
+            for (int i = 1; i <= ROW_COUNT; i++) {
+                Row row = formulaSheet.createRow(i);
+                int excelRow = i + 1;
+                row.createCell(0).setCellValue(i);
+                row.createCell(1).setCellValue("s'" + i);
+                row.createCell(2).setCellFormula("A%d*2+0.5".formatted(excelRow));
+                row.createCell(3).setCellFormula("B%d&\"-\"&C%d".formatted(excelRow, excelRow));
+                row.createCell(4).setCellFormula("SUM(A$2:A%d)".formatted(excelRow));
+            }
+            workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+
+            // лист с пропуском из отсутствующих строк длиннее нескольких порций
+            XSSFSheet gapSheet = workbook.createSheet("Пропуск");
+            for (int i = 1; i <= ROW_COUNT; i++) {
+                if (i >= GAP_FROM && i <= GAP_TO)
+                    continue;
+                Row row = gapSheet.createRow(i);
+                row.createCell(0).setCellValue(i);
+                row.createCell(1).setCellValue("s" + i);
+            }
+            workbook.write(output);
+        }
+        bookReader = new ExcelBookReader(path, ExcelBookReader.FormulaStrategy.CACHED_VALUE);
+        sheet = bookReader.getWorkbook().getSheet("Формулы");
+        gapSheet = bookReader.getWorkbook().getSheet("Пропуск");
+        plan = ColumnPlan.compile(FIELD_TYPES, 0, FIELD_TYPES.size() - 1);
+    }
+
+    @AfterAll
+    static void closeBook() throws IOException {
+        bookReader.close();
+    }
+
+    private static RowBatch<String> convert(int rowFrom, int rowTo) {
+        return new RowBatch<>(rowFrom, rowTo, bookReader.toPostgresTableValues(sheet, plan, rowFrom, rowTo).orElseThrow());
+    }
+
+    private static String convertParallel(boolean ordered) {
+        var batches = new ArrayList<RowBatch<String>>();
+        new ParallelBatchConverter(4, ordered).convert(1, ROW_COUNT, () -> 97,
+                ParallelBatchConverterTest::convert, batches::add);
+        if (ordered) {
+            for (int i = 1; i < batches.size(); i++)
+                assertEquals(batches.get(i - 1).getRowTo() + 1, batches.get(i).getRowFrom());
+        }
+        return batches.stream()
+                .sorted(Comparator.comparingInt(RowBatch::getRowFrom))
+                .map(RowBatch::getData)
+                .collect(Collectors.joining(", "));
+    }
+
+    @Test
+    void orderedParallelOutputMatchesSequential() {
+        String sequential = convert(1, ROW_COUNT).getData();
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential, convertParallel(true));
+    }
+
+    @Test
+    void unorderedParallelOutputMatchesSequentialAfterSorting() {
+        assertEquals(convert(1, ROW_COUNT).getData(), convertParallel(false));
+    }
+
+    // Отсутствующие строки пропускаются построчно: результат не зависит от границ порций
+    private static List<Object[]> convertRowsParallel(ColumnPlan gapPlan, boolean ordered) {
+        var batches = new ArrayList<RowBatch<List<Object[]>>>();
+        new ParallelBatchConverter(4, ordered).convert(1, ROW_COUNT, () -> 97,
+                (rowFrom, rowTo) -> new RowBatch<>(rowFrom, rowTo, bookReader.toPostgresRowObjects(gapSheet, gapPlan, rowFrom, rowTo)),
+                batches::add);
+        return batches.stream()
+                .sorted(Comparator.comparingInt(RowBatch::getRowFrom))
+                .flatMap(batch -> batch.getData().stream())
+                .toList();
+    }
+
+    @Test
+    void parallelRowsWithGapMatchSequential() {
+        ColumnPlan gapPlan = ColumnPlan.compile(List.of("DOUBLE PRECISION", "TEXT"), 0, 1);
+        List<Object[]> sequential = bookReader.toPostgresRowObjects(gapSheet, gapPlan, 1, ROW_COUNT);
+        assertEquals(ROW_COUNT - (GAP_TO - GAP_FROM + 1), sequential.size());
+        assertEquals((double) ROW_COUNT, sequential.get(sequential.size() - 1)[0]);
+
+        for (boolean ordered : new boolean[]{true, false}) {
+            List<Object[]> parallel = convertRowsParallel(gapPlan, ordered);
+            assertEquals(sequential.size(), parallel.size());
+            for (int i = 0; i < sequential.size(); i++)
+                assertArrayEquals(sequential.get(i), parallel.get(i), Arrays.toString(sequential.get(i)));
+        }
+    }
+
+    @Test
+    void batchSizeIsRequestedForEachBatch() {
+        var batchRows = new AtomicInteger(10);
+        var batches = new ArrayList<RowBatch<Integer>>();
+        new ParallelBatchConverter(2, true).convert(0, 99, () -> batchRows.getAndAdd(10),
+                (rowFrom, rowTo) -> new RowBatch<>(rowFrom, rowTo, rowTo - rowFrom + 1), batches::add);
+
+        assertEquals(List.of(10, 20, 30, 40), batches.stream().map(RowBatch::getData).toList());
+    }
+
+    @Test
+    void converterErrorIsRethrown() {
+        var error = assertThrows(IllegalStateException.class, () -> new ParallelBatchConverter(3, true)
+                .convert(0, 999, () -> 50, (rowFrom, rowTo) -> {
+                    if (rowFrom >= 500)
+                        throw new IllegalStateException("row " + rowFrom);
+                    return rowFrom;
+                }, batch -> { }));
+        assertEquals("row 500", error.getMessage());
+    }
+
+    @Test
+    void emptyRangeProducesNoBatches() {
+        var batches = new ArrayList<Integer>();
+        new ParallelBatchConverter(2, true).convert(5, 4, () -> 10, (rowFrom, rowTo) -> rowFrom, batches::add);
+        assertEquals(List.of(), batches);
+    }
+}
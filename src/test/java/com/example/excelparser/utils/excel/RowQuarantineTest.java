@@ -0,0 +1,159 @@
+package com.example.excelparser.utils.excel;
+
+import com.example.excelparser.utils.database.PostgresQueryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RowQuarantineTest {
+    private static final String FIELD_NAMES = "a, b";
+
+    private PostgresQueryService queryService;
+    private PostgresQueryService rejectService;
+    private RowQuarantine quarantine;
+    // строки, записанные в таблицу
+    private final Set<Integer> insertedRows = new TreeSet<>();
+
+    @BeforeEach
+    void setUp() {
+        queryService = mock(PostgresQueryService.class);
+        rejectService = mock(PostgresQueryService.class);
+        when(rejectService.tryCreateRejectTable()).thenReturn(true);
+        when(rejectService.saveRejectedRow(anyString(), anyInt(), anyString(), anyString())).thenReturn(true);
+        quarantine = new RowQuarantine(queryService, rejectService, FIELD_NAMES, "Лист1");
+    }
+
+    // Значения диапазона строк в виде "from:to"
+    private static String values(int rowFrom, int rowTo) {
+        return rowFrom + ":" + rowTo;
+    }
+
+    // Записывает строки листа rows; части порции - значения "from:to" по индексам строк листа
+    private int insert(int... rows) {
+        return quarantine.insert(rows, values(rows[0], rows[rows.length - 1]),
+                (rowFrom, rowTo) -> values(rows[rowFrom], rows[rowTo]));
+    }
+
+    private int insertRange(int rowFrom, int rowTo) {
+        return insert(IntStream.rangeClosed(rowFrom, rowTo).toArray());
+    }
+
+    // БД отклоняет запрос, если в диапазоне есть хотя бы одна из строк badRows
+    private void rejectRows(Set<Integer> badRows) throws SQLException {
+        when(queryService.tryInsertData(eq(FIELD_NAMES), anyString())).thenAnswer(invocation -> {
+            String[] range = invocation.<String>getArgument(1).split(":");
+            int rowFrom = Integer.parseInt(range[0]);
+            int rowTo = Integer.parseInt(range[1]);
+            var rows = new ArrayList<Integer>();
+            for (int i = rowFrom; i <= rowTo; i++) {
+                if (badRows.contains(i))
+                    return Optional.of("invalid input syntax for type double precision");
+                rows.add(i);
+            }
+            insertedRows.addAll(rows);
+            return Optional.empty();
+        });
+    }
+
+    @Test
+    void cleanBatchIsInsertedWithOneQuery() throws SQLException {
+        rejectRows(Set.of());
+
+        assertEquals(0, insertRange(10, 19));
+
+        verify(queryService, times(1)).tryInsertData(eq(FIELD_NAMES), anyString());
+        verify(rejectService, never()).tryCreateRejectTable();
+        assertEquals(10, insertedRows.size());
+    }
+
+    @Test
+    void badRowsAreRejectedAndGoodRowsInserted() throws SQLException {
+        rejectRows(Set.of(13, 17));
+
+        assertEquals(2, insertRange(10, 19));
+
+        verify(rejectService, times(1)).tryCreateRejectTable();
+        verify(rejectService).saveRejectedRow(eq("Лист1"), eq(13), anyString(), eq(values(13, 13)));
+        verify(rejectService).saveRejectedRow(eq("Лист1"), eq(17), anyString(), eq(values(17, 17)));
+        assertEquals(Set.of(10, 11, 12, 14, 15, 16, 18, 19), insertedRows);
+    }
+
+    @Test
+    void singleRowBatchIsRejected() throws SQLException {
+        rejectRows(Set.of(5));
+
+        assertEquals(1, insertRange(5, 5));
+
+        verify(rejectService).saveRejectedRow(eq("Лист1"), eq(5), anyString(), eq(values(5, 5)));
+    }
+
+    @Test
+    void nonDataErrorFailsBatch() throws SQLException {
+        when(queryService.tryInsertData(eq(FIELD_NAMES), anyString()))
+                .thenThrow(new SQLException("relation does not exist", "42P01"));
+
+        assertThrows(RuntimeException.class,
+                () -> insertRange(0, 9));
+        verify(rejectService, never()).saveRejectedRow(anyString(), anyInt(), anyString(), anyString());
+    }
+
+    @Test
+    void failedRejectSaveFailsBatch() throws SQLException {
+        rejectRows(Set.of(0));
+        when(rejectService.saveRejectedRow(anyString(), anyInt(), anyString(), anyString())).thenReturn(false);
+
+        assertThrows(RuntimeException.class,
+                () -> insertRange(0, 3));
+    }
+
+    @Test
+    void rejectedRowsAreReportedInRowOrder() throws SQLException {
+        var rejected = new ArrayList<Integer>();
+        rejectRows(Set.of(2, 3, 4));
+        when(rejectService.saveRejectedRow(anyString(), anyInt(), anyString(), anyString())).thenAnswer(invocation -> {
+            rejected.add(invocation.getArgument(1));
+            return true;
+        });
+
+        assertEquals(3, insertRange(0, 7));
+        assertEquals(List.of(2, 3, 4), rejected);
+    }
+
+    @Test
+    void rowsAfterGapAreRejectedWithSheetIndexes() throws SQLException {
+        var rejected = new ArrayList<Integer>();
+        rejectRows(Set.of(50));
+        when(rejectService.saveRejectedRow(anyString(), anyInt(), anyString(), anyString())).thenAnswer(invocation -> {
+            rejected.add(invocation.getArgument(1));
+            return true;
+        });
+
+        assertEquals(1, insert(0, 1, 2, 50, 51));
+        assertEquals(List.of(50), rejected);
+        verify(rejectService).saveRejectedRow(eq("Лист1"), eq(50), anyString(), eq(values(50, 50)));
+    }
+
+    @Test
+    void emptyBatchIsNotInserted() throws SQLException {
+        assertEquals(0, quarantine.insert(new int[0], "", (rowFrom, rowTo) -> ""));
+        verify(queryService, never()).tryInsertData(anyString(), anyString());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.excelparser.utils.excel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SheetIndexTest {
+
+    // Строки 1 (колонки 0-2, 5) и 4 (колонка 3)
+    private static SheetIndex sampleIndex() {
+        return new SheetIndex.Builder()
+                .addCell(1, 0).addCell(1, 1).addCell(1, 2).addCell(1, 5)
+                .addCell(4, 3)
+                .build();
+    }
+
+    @Test
+    void emptyIndex() {
+        SheetIndex index = new SheetIndex.Builder().build();
+        assertTrue(index.isEmpty());
+        assertEquals(-1, index.getFirstRow());
+        assertEquals(-1, index.getLastRow());
+        assertEquals(0, index.getColumnOccupancy(1).length);
+    }
+
+    @Test
+    void rowsAndCellCounts() {
+        SheetIndex index = sampleIndex();
+        assertEquals(2, index.getRowCount());
+        assertEquals(1, index.getFirstRow());
+        assertEquals(4, index.getLastRow());
+        assertTrue(index.hasRow(4));
+        assertFalse(index.hasRow(2));
+
+        assertEquals(4, index.countCells(1, 0, 10));
+        assertEquals(2, index.countCells(1, 1, 4));
+        assertEquals(0, index.countCells(2, 0, 10));
+        assertArrayEquals(new int[]{1, 2}, index.getRowBounds(0, 1, 4));
+        assertArrayEquals(new int[]{-1, -1}, index.getRowBounds(1, 0, 2));
+    }
+
+    @Test
+    void lastRowInRange() {
+        SheetIndex index = sampleIndex();
+        assertEquals(4, index.getLastRow(0, 100, 0, 10));
+        assertEquals(1, index.getLastRow(0, 100, 0, 2));
+        assertEquals(1, index.getLastRow(0, 3, 0, 10));
+        assertEquals(-1, index.getLastRow(2, 3, 0, 10));
+    }
+
+    @Test
+    void lastRowWithValuesInColumns() {
+        SheetIndex index = sampleIndex();
+        assertEquals(4, index.getLastRow(0, 100, new int[]{0, 3}));
+        assertEquals(1, index.getLastRow(0, 100, new int[]{5, 4}));
+        assertEquals(-1, index.getLastRow(0, 100, new int[]{4}));
+    }
+
+    @Test
+    void lastDataRowKeepsInnerGapsAndTrimsTrailingRows() {
+        var builder = new SheetIndex.Builder().addCell(0, 0).addCell(1, 0);
+        // строки со значениями после пропуска в 500 строк и оформленные строки за пределами плана
+        builder.addCell(502, 1);
+        for (int row = 503; row < 1000; row++)
+            builder.addCell(row, 7);
+        ColumnPlan plan = ColumnPlan.compile(List.of("TEXT", "TEXT"), 0, 1);
+
+        SheetIndex index = builder.build();
+        assertEquals(502, DataExtentAnalyzer.findLastDataRow(index, 1, 999, plan));
+        assertEquals(1, DataExtentAnalyzer.findLastDataRow(index, 1, 400, plan));
+        // значений в диапазоне нет
+        assertEquals(502, DataExtentAnalyzer.findLastDataRow(index, 503, 999, plan));
+    }
+
+    @Test
+    void columnOccupancy() {
+        SheetIndex index = sampleIndex();
+        assertArrayEquals(new int[]{1, 1, 1, 1, 0, 1}, index.getColumnOccupancy(1));
+        assertArrayEquals(new int[]{1, 1, 1, 0, 0, 1}, index.getColumnOccupancy(2));
+    }
+
+    @Test
+    void indexGrowsPastInitialCapacity() {
+        var builder = new SheetIndex.Builder();
+        for (int row = 0; row < 1000; row++) {
+            builder.addCell(row, 0);
+            builder.addCell(row, 2 + row % 3);
+        }
+        SheetIndex index = builder.build();
+        assertEquals(1000, index.getRowCount());
+        assertEquals(999, index.getLastRow());
+        for (int i = 0; i < index.getRowCount(); i++)
+            assertEquals(2, index.countRowCells(i, 0, 10));
+    }
+
+    @Test
+    void rowsMustBeAscending() {
+        var builder = new SheetIndex.Builder().addCell(5, 0);
+        assertThrows(RuntimeException.class, () -> builder.addCell(4, 0));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.excelparser.utils.excel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SheetRegionDetectorTest {
+    private final SheetRegionDetector detector = new SheetRegionDetector();
+
+    // Индекс по строкам листа: символ, отличный от '.', - непустая ячейка
+    private static SheetIndex index(String... rows) {
+        var builder = new SheetIndex.Builder();
+        for (int row = 0; row < rows.length; row++) {
+            for (int column = 0; column < rows[row].length(); column++) {
+                if (rows[row].charAt(column) != '.')
+                    builder.addCell(row, column);
+            }
+        }
+        return builder.build();
+    }
+
+    private static void assertRegion(QueryPropertyHolder holder, int headerRow, int lastDataRow, int from, int to) {
+        assertEquals(headerRow, holder.getHeaderRow());
+        assertEquals(headerRow + 1, holder.getFirstDataRow());
+        assertEquals(Optional.of(lastDataRow), holder.getLastDataRow());
+        assertEquals(Optional.of(QueryPropertyHolder.DataColumnInfo.of(from, to)), holder.getDataColumnInfo());
+    }
+
+    @Test
+    void titleRowIsSkipped() {
+        List<QueryPropertyHolder> holders = detector.detect("Лист", index(
+                "x...",
+                "xxxx",
+                "xxxx",
+                "xx.x"));
+
+        assertEquals(1, holders.size());
+        assertRegion(holders.get(0), 1, 3, 0, 3);
+        assertEquals("List", holders.get(0).getDbTableName());
+    }
+
+    @Test
+    void tablesSideBySideAndBelow() {
+        List<QueryPropertyHolder> holders = detector.detect("s", index(
+                "xx.xxx",
+                "xx.xxx",
+                "......",
+                "xx....",
+                "xx...."));
+
+        assertEquals(3, holders.size());
+        assertRegion(holders.get(0), 0, 1, 0, 1);
+        assertRegion(holders.get(1), 3, 4, 0, 1);
+        assertRegion(holders.get(2), 0, 1, 3, 5);
+        assertEquals("s_1", holders.get(0).getDbTableName());
+    }
+
+    @Test
+    void columnsAreClampedToHeader() {
+        List<QueryPropertyHolder> holders = detector.detect("s", index(
+                ".xxx.",
+                "xxxxx",
+                "xxxxx"));
+
+        assertEquals(1, holders.size());
+        assertRegion(holders.get(0), 0, 2, 1, 3);
+    }
+
+    @Test
+    void headerWithGapsIsRejected() {
+        assertTrue(detector.detect("s", index(
+                "xx.xx",
+                "xxxxx",
+                "xxxxx")).isEmpty());
+    }
+
+    @Test
+    void trailingRowsOutsideHeaderColumnsAreNotData() {
+        List<QueryPropertyHolder> holders = detector.detect("s", index(
+                "xxx..",
+                "xxx..",
+                "...xx"));
+
+        assertEquals(1, holders.size());
+        assertRegion(holders.get(0), 0, 1, 0, 2);
+    }
+
+    @Test
+    void blockWithoutDataRowsIsNotTable() {
+        assertTrue(detector.detect("s", index("xxx")).isEmpty());
+        assertTrue(new SheetRegionDetector(3).detect("s", index("xx", "xx", "xx")).isEmpty());
+    }
+}